@@ -0,0 +1,66 @@
+import java.util.List;
+import java.util.function.IntToLongFunction;
+
+/**
+ * The operations measured by the JMH benchmarks in jmh/bench/OthelloBenchmark.java, on fixed suites of
+ * opening, midgame and endgame states (see PositionSuite). An operation is one call on state i of a suite:
+ * - legalMoves: GameState.legalMoves()
+ * - moveList: GameState.legalMoves(int[]), which does not allocate
+ * - insertToken: GameState.insertToken(first legal move) and undoMove()
+ * - isFinished: GameState.isFinished()
+ * - search: OthelloAI.minimaxSearch to SEARCH_DEPTH. The states are from different games, so a search
+ *   gets little help from the transposition table of the one before. The table is small (1 MB), as it is
+ *   cleared for every new game.
+ *
+ * JMH does not accept benchmarks in the default package, and a class in a named package cannot refer to
+ * the classes of this project, so the benchmarks get the operations from here by reflection, as JDK
+ * functional interfaces that return a result of the call for the Blackhole.
+ */
+public class BenchmarkCases {
+
+	public static final int STATES = 32; // states per suite
+	private static final int SEARCH_DEPTH = 4;
+
+	/**
+	 * Returns the operation of the given name on the suite of states of the phase (opening, midgame or endgame)
+	 * for the board size.
+	 */
+	public static IntToLongFunction operation(String name, int size, String phase) {
+		GameState[] states = suite(size, phase).toArray(new GameState[0]);
+		switch (name) {
+			case "legalMoves":
+				return i -> states[i].legalMoves().size();
+			case "moveList":
+				int[] squares = new int[size * size];
+				return i -> states[i].legalMoves(squares);
+			case "insertToken":
+				Position[] first = new Position[states.length];
+				for (int i = 0; i < states.length; i++)
+					first[i] = states[i].legalMoves().get(0);
+				return i -> {
+					states[i].insertToken(first[i]);
+					long key = states[i].getHashKey();
+					states[i].undoMove();
+					return key;
+				};
+			case "isFinished":
+				return i -> states[i].isFinished() ? 1 : 0;
+			case "search":
+				OthelloAI ai = new OthelloAI(1, TranspositionTable.ReplacementPolicy.TWO_TIER);
+				return i -> {
+					Position p = ai.minimaxSearch(states[i], SEARCH_DEPTH);
+					return p.col + ai.getNodeCount();
+				};
+			default:
+				throw new IllegalArgumentException("Unknown benchmark: " + name);
+		}
+	}
+
+	/**
+	 * Returns the states of a phase: 4 moves played, half the board filled, or 12 empty squares left.
+	 */
+	static List<GameState> suite(int size, String phase) {
+		int moves = phase.equals("opening") ? 4 : phase.equals("midgame") ? size * size / 2 - 4 : size * size - 16;
+		return PositionSuite.positions(size, moves, STATES, 1);
+	}
+}
@@ -0,0 +1,176 @@
+/**
+ * Solves the end of the game exactly: searches all the way to the end of the game, where the score is the
+ * difference between the number of tokens of the player in turn and of the opponent, instead of using a
+ * heuristic utility at some depth. This is feasible when only a few empty squares are left.
+ *
+ * The solver works directly on the bitboards of a GameState (boards of size 8 or less) and keeps its move
+ * lists in preallocated arrays, so the search does not allocate. Moves are ordered by
+ * - parity: moves into a quadrant with an odd number of empty squares first, since the player who moves
+ *   last in a region usually gains from it,
+ * - fastest-first (when more than FASTEST_FIRST_EMPTIES squares are empty): moves that leave the opponent
+ *   the fewest replies first, which makes the tree narrow quickly.
+ */
+public class EndgameSolver {
+
+	public enum Mode {
+		WIN_LOSS_DRAW,	// only find out whether the player in turn wins, loses or draws (faster)
+		EXACT			// find the exact final difference in tokens
+	}
+
+	private static final int FASTEST_FIRST_EMPTIES = 6;
+	private static final int PARITY_SCORE = 1 << 10;
+	private static final int INFINITY = 65;
+
+	private long onBoard;
+	private final long[] quadrants = new long[4];
+	private final int[][] moves = new int[65][64];	// move squares per ply
+	private final int[][] scores = new int[65][64];	// ordering scores per ply
+
+	private long deadline;
+	private volatile boolean stopped;
+	private boolean aborted;
+	private long nodes;
+	private int bestSquare;
+	private int score;
+
+	/**
+	 * Solves the state for the player in turn.
+	 * @param deadline a System.nanoTime() value after which the solver gives up
+	 * @return the best move, or null if the board has no bitboards, the player in turn cannot move or the
+	 * deadline was reached (or stop() was called) first
+	 */
+	public Position solve(GameState s, Mode mode, long deadline) {
+		if (!s.hasBitboards())
+			return null;
+		int size = s.getBoard().length;
+		onBoard = s.getBoardBits();
+		for (int q = 0; q < 4; q++)
+			quadrants[q] = 0;
+		for (int col = 0; col < size; col++) {
+			for (int row = 0; row < size; row++)
+				quadrants[(col < size / 2 ? 0 : 2) + (row < size / 2 ? 0 : 1)] |= 1L << (col * 8 + row);
+		}
+		this.deadline = deadline;
+		aborted = false;
+		nodes = 0;
+		bestSquare = -1;
+
+		long own = s.getTokenBits(s.getPlayerInTurn());
+		long opp = s.getTokenBits(s.getPlayerInTurn() == 1 ? 2 : 1);
+		if (GameState.moves(own, opp, onBoard) == 0)
+			return null;
+		if (mode == Mode.WIN_LOSS_DRAW)
+			score = solve(own, opp, -1, 1, 0, false);
+		else
+			score = solve(own, opp, -INFINITY, INFINITY, 0, false);
+		if (aborted || bestSquare < 0)
+			return null;
+		return new Position(bestSquare >>> 3, bestSquare & 7);
+	}
+
+	/**
+	 * Makes a solve that is running on another thread give up as if its deadline was reached. Every solve
+	 * gives up at once until clearStop() is called, so a stop() just before a solve starts is not lost.
+	 */
+	public void stop() {
+		stopped = true;
+	}
+
+	/**
+	 * Lets solve search again after stop(). Call it when a new solve is requested, not from the solving thread.
+	 */
+	public void clearStop() {
+		stopped = false;
+	}
+
+	/**
+	 * Returns the score of the last solved state for the player in turn: the final difference in tokens in
+	 * EXACT mode, or -1, 0 or 1 for a loss, draw or win in WIN_LOSS_DRAW mode.
+	 */
+	public int getScore() {
+		return score;
+	}
+
+	/**
+	 * Returns the number of nodes visited by the last call of solve.
+	 */
+	public long getNodeCount() {
+		return nodes;
+	}
+
+	/**
+	 * Negamax alpha-beta to the end of the game for the player owning own.
+	 * @param passed true if the opponent just passed, so the game is over if this player cannot move either
+	 */
+	private int solve(long own, long opp, int alpha, int beta, int ply, boolean passed) {
+		if ((++nodes & 4095) == 0 && (System.nanoTime() > deadline || stopped))
+			aborted = true;
+		if (aborted)
+			return 0;
+
+		long legal = GameState.moves(own, opp, onBoard);
+		if (legal == 0) {
+			if (passed)
+				return Long.bitCount(own) - Long.bitCount(opp);
+			// a pass uses no move list, so the opponent can use the one of this ply
+			return -solve(opp, own, -beta, -alpha, ply, true);
+		}
+
+		int count = orderMoves(legal, own, opp, ply);
+		int best = -INFINITY;
+		for (int i = 0; i < count; i++) {
+			int square = moves[ply][i];
+			long move = 1L << square;
+			long flips = GameState.flips(own, opp, move);
+			int value = -solve(opp & ~flips, own | flips | move, -beta, -alpha, ply + 1, false);
+			if (aborted)
+				return 0;
+			if (value > best) {
+				best = value;
+				if (ply == 0)
+					bestSquare = square;
+				if (value > alpha)
+					alpha = value;
+				if (alpha >= beta)
+					break;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Puts the legal moves into moves[ply], best first, and returns how many there are.
+	 */
+	private int orderMoves(long legal, long own, long opp, int ply) {
+		long empty = onBoard & ~(own | opp);
+		long oddQuadrants = 0;
+		for (int q = 0; q < 4; q++) {
+			if ((Long.bitCount(empty & quadrants[q]) & 1) != 0)
+				oddQuadrants |= quadrants[q];
+		}
+		boolean fastestFirst = Long.bitCount(empty) > FASTEST_FIRST_EMPTIES;
+
+		int[] move = moves[ply];
+		int[] score = scores[ply];
+		int count = 0;
+		for (long m = legal; m != 0; m &= m - 1) {
+			int square = Long.numberOfTrailingZeros(m);
+			long bit = 1L << square;
+			int s = (oddQuadrants & bit) != 0 ? PARITY_SCORE : 0;
+			if (fastestFirst) {
+				long flips = GameState.flips(own, opp, bit);
+				s -= Long.bitCount(GameState.moves(opp & ~flips, own | flips | bit, onBoard)) * 2 * PARITY_SCORE;
+			}
+			// insertion sort, best first
+			int j = count++;
+			while (j > 0 && score[j - 1] < s) {
+				move[j] = move[j - 1];
+				score[j] = score[j - 1];
+				j--;
+			}
+			move[j] = square;
+			score[j] = s;
+		}
+		return count;
+	}
+}
@@ -1,8 +1,16 @@
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Class to represent the state of a game of Othello.  The state is defined by a 2-dimensional
  * board and whose turn it is. 
+ * 
+ * Boards of size 8 or less are additionally kept as two bitboards (one long per player), on which 
+ * move generation and flipping are done with shifts and masks. Square (col, row) is bit col*8+row, 
+ * so scanning the bits from low to high visits the squares in the same order as the 2-dimensional 
+ * board. Larger boards fall back to scanning the array.
  * @author Mai Ajspur
  * @version 9.2.2018
  */
@@ -10,6 +18,43 @@ public class GameState {
 	private int[][] board; 		// Possible values: 0 (empty), 1 (black), 2 (white)
 	private int currentPlayer; 	// The player who is next to put a token on the board. Value is 1 or 2.
 	private int size;  			// The number of columns = the number of rows on the board
+
+	private boolean bitboard;	// Whether the board fits in (and is mirrored by) the bitboards below
+	private long black;			// Bit col*8+row is set if (col, row) holds a black token
+	private long white;			// Bit col*8+row is set if (col, row) holds a white token
+	private long onBoard;		// Bits of the squares that exist on a board of this size
+
+	// Undo stack of the moves made so far, so they can be taken back in place (see undoMove)
+	private int moveCount;			// Number of moves on the undo stack
+	private int[] undoSquares;		// The place of each move, as col*size+row
+	private int[] undoPlayers;		// The player who made each move
+	private long[] undoFlips;		// Bitboard only: the tokens turned by each move
+	private int[] undoTrailMarks;	// Array board only: where the turned tokens of each move start in undoTrail
+	private int[] undoTrail;		// Array board only: the tokens turned by all moves, as col*size+row
+	private int trailSize;			// Array board only: number of used entries in undoTrail
+	private long[] undoHashes;		// The hash key before each move
+	private int[] moveBuffer;		// Scratch list of moves for legalMoves()
+
+	// Number of legal moves of the player in turn and of the other player, or -1 if not known yet. They are
+	// computed when first asked for, forgotten by every move and undoMove, and swapped by changePlayer.
+	private int mobility;
+	private int opponentMobility;
+
+	// Zobrist hashing: the key of a state is the xor of a random number per (square, player) token
+	// on the board, plus SIDE_KEY when it is player 2's turn. It is updated incrementally by every move.
+	private long hash;
+	private long[] zobristKeys;		// Entry 2*(col*size+row) + (player-1)
+	private static final long SIDE_KEY = 0x9E3779B97F4A7C15L;
+	private static final ConcurrentHashMap<Integer, long[]> ZOBRIST_KEYS = new ConcurrentHashMap<Integer, long[]>();
+
+	// Shift amounts for the 8 directions; a step of one column is 8 bits, a step of one row is 1 bit
+	private static final int[] SHIFTS = { 1, -1, 8, -8, 9, 7, -7, -9 };
+	private static final long ROW_0 = 0x0101010101010101L;
+	private static final long ROW_7 = 0x8080808080808080L;
+	// Masks removing the bits that wrap around into the next column after one or two steps
+	private static final long[] MASKS = { ~ROW_0, ~ROW_7, -1L, -1L, ~ROW_0, ~ROW_7, ~ROW_0, ~ROW_7 };
+	private static final long[] MASKS2 = { ~(ROW_0 | ROW_0 << 1), ~(ROW_7 | ROW_7 >>> 1), -1L, -1L,
+			~(ROW_0 | ROW_0 << 1), ~(ROW_7 | ROW_7 >>> 1), ~(ROW_0 | ROW_0 << 1), ~(ROW_7 | ROW_7 >>> 1) };
 	
 	//************ Constructors ****************//
 	/**
@@ -29,6 +74,7 @@ public class GameState {
         board[half+1][half+1] = 1;
         board[half][half+1] = 2;
         board[half+1][half] = 2;   
+        init();
 	}
 	
 	/**
@@ -47,6 +93,75 @@ public class GameState {
 			}
 		}
 		this.currentPlayer = playerToTakeTurn;
+		init();
+	}
+
+	/**
+	 * Sets up everything derived from the board and the player in turn: the bitboards, the (empty) 
+	 * undo stack and the hash key.
+	 */
+	private void init(){
+		bitboard = size <= 8;
+		undoSquares = new int[size*size];
+		undoPlayers = new int[size*size];
+		undoHashes = new long[size*size];
+		moveBuffer = new int[size*size];
+		if ( bitboard ){
+			undoFlips = new long[size*size];
+			initBitboards();
+		}
+		else {
+			undoTrailMarks = new int[size*size];
+			undoTrail = new int[4*size*size];
+		}
+		initHash();
+		mobility = -1;
+		opponentMobility = -1;
+	}
+
+	/**
+	 * Computes the hash key of the current board and player in turn from scratch.
+	 */
+	private void initHash(){
+		zobristKeys = ZOBRIST_KEYS.computeIfAbsent(size, GameState::createZobristKeys);
+		hash = currentPlayer == 2 ? SIDE_KEY : 0;
+		for (int i = 0; i < size; i++){
+			for (int j = 0; j < size; j++){
+				if ( board[i][j] != 0 )
+					hash ^= zobristKeys[2*(i*size + j) + board[i][j] - 1];
+			}
+		}
+	}
+
+	/**
+	 * Returns the random numbers used for hashing boards of the given size. They are generated from a fixed 
+	 * seed, so the keys of a position are the same in every run.
+	 */
+	private static long[] createZobristKeys(int size){
+		Random random = new Random(size);
+		long[] keys = new long[2*size*size];
+		for (int i = 0; i < keys.length; i++)
+			keys[i] = random.nextLong();
+		return keys;
+	}
+
+	/**
+	 * Sets up the bitboards from the 2-dimensional board.
+	 */
+	private void initBitboards(){
+		black = 0;
+		white = 0;
+		onBoard = 0;
+		for (int i = 0; i < size; i++){
+			for (int j = 0; j < size; j++){
+				long bit = 1L << (i*8 + j);
+				onBoard |= bit;
+				if ( board[i][j] == 1 )
+					black |= bit;
+				else if ( board[i][j] == 2 )
+					white |= bit;
+			}
+		}
 	}
 	
 	//************ Getter methods *******************//
@@ -64,30 +179,88 @@ public class GameState {
 		return currentPlayer;
 	}
 
+	/**
+	 * Returns the Zobrist hash key of this state (the tokens on the board and the player in turn). 
+	 * Equal states have equal keys; different states have different keys with very high probability.
+	 */
+	public long getHashKey(){
+		return hash;
+	}
+
+	/**
+	 * Returns true if the board is kept as bitboards (boards of size 8 or less), so that getTokenBits and
+	 * getBoardBits can be used.
+	 */
+	public boolean hasBitboards(){
+		return bitboard;
+	}
+
+	/**
+	 * Returns the bitboard of the tokens of the given player (1 or 2): bit col*8+row is set if (col, row) 
+	 * holds a token of the player.
+	 */
+	public long getTokenBits(int player){
+		return player == 1 ? black : white;
+	}
+
+	/**
+	 * Returns the bitboard of the squares that exist on the board.
+	 */
+	public long getBoardBits(){
+		return onBoard;
+	}
+
 	//************* Methods ****************//
 	/**
 	 * Skips the turn of the current player (without) changing the board.
 	 */
 	public void changePlayer(){
 		currentPlayer = currentPlayer == 1 ? 2 : 1;
+		hash ^= SIDE_KEY;
+		int m = mobility;
+		mobility = opponentMobility;
+		opponentMobility = m;
 	}
 	
 	/**
 	 * Returns true if the game is finished (i.e. none of the players can make any legal moves)
-	 * and false otherwise.
+	 * and false otherwise. The state is not changed.
 	 */
 	public boolean isFinished(){
-		if ( !legalMoves().isEmpty() )
-			return false;
-		else{ //current player has no legal moves
-			changePlayer();
-			if ( legalMoves().isEmpty() ) //next player also has no legal moves
-				return true;
-			else{
-				changePlayer();
-				return false;
-			}
-		}
+		return !hasLegalMove() && !opponentHasLegalMove();
+	}
+
+	/**
+	 * Returns true if the player in turn has a legal move. Stops at the first one found if the number 
+	 * of moves is not known yet.
+	 */
+	public boolean hasLegalMove(){
+		return mobility >= 0 ? mobility > 0 : canMove(currentPlayer);
+	}
+
+	/**
+	 * Returns true if the player not in turn would have a legal move if it were its turn.
+	 */
+	public boolean opponentHasLegalMove(){
+		return opponentMobility >= 0 ? opponentMobility > 0 : canMove(currentPlayer == 1 ? 2 : 1);
+	}
+
+	/**
+	 * Returns the number of legal moves of the player in turn.
+	 */
+	public int getMobility(){
+		if ( mobility < 0 )
+			mobility = countMoves(currentPlayer);
+		return mobility;
+	}
+
+	/**
+	 * Returns the number of legal moves the player not in turn would have if it were its turn.
+	 */
+	public int getOpponentMobility(){
+		if ( opponentMobility < 0 )
+			opponentMobility = countMoves(currentPlayer == 1 ? 2 : 1);
+		return opponentMobility;
 	}
 	
 	/**
@@ -95,6 +268,8 @@ public class GameState {
 	 * with the numbers in that order.
 	 */
 	public int[] countTokens(){
+		if ( bitboard )
+			return new int[]{Long.bitCount(black), Long.bitCount(white)};
     	int tokens1 = 0;
     	int tokens2 = 0;
     	for (int i = 0; i < size; i++){
@@ -112,29 +287,65 @@ public class GameState {
 	 * If it is legal for the current player to put a token at the given place, then the token is inserted, the required 
 	 * tokens from the opponent is turned, and true is returned. If the move is not legal, false is returned. 
 	 * False is also returned if the given place does not represent a place on the board. 
+	 * Same as makeMove, so the move can be taken back with undoMove.
 	 */
     public boolean insertToken(Position place) { 
+    	return makeMove(place);
+    }
+
+	/**
+	 * Makes the move of the current player at the given place in place, exactly like insertToken, and 
+	 * pushes what is needed to take it back on the undo stack. Illegal moves change nothing and push nothing.
+	 * This allows a search to walk the game tree on a single state without copying the board per node.
+	 * @return true if the move was legal (and made), false otherwise
+	 */
+    public boolean makeMove(Position place) { 
     	if ( place.col < 0 || place.row < 0 || place.col >= size || place.row >= size ) //not a position on the board
     		return false;
-    	if ( board[place.col][place.row] != 0 ) // The position is not empty
+    	return makeMove(place.col*size + place.row);
+    }
+
+	/**
+	 * Same as makeMove(Position) for the place given as col*size+row, as written by legalMoves(int[]).
+	 * @return true if the move was legal (and made), false otherwise
+	 */
+    public boolean makeMove(int square) { 
+    	if ( square < 0 || square >= size*size ) //not a position on the board
     		return false;
+    	int col = square / size;
+    	int row = square % size;
+    	if ( board[col][row] != 0 ) // The position is not empty
+    		return false;
+    	if ( bitboard )
+    		return makeMoveBitboard(col, row);
 
+    	long oldHash = hash;
+    	int trailMark = trailSize;
     	boolean capturesFound = false;
     	// Capturing all possible opponents of the current player
     	for (int deltaX = -1; deltaX <= 1; deltaX++){
     		for (int deltaY = -1; deltaY <= 1; deltaY++){
-        		int captives = captureInDirection(place, deltaX, deltaY); 
+        		int captives = captureInDirection(currentPlayer, col, row, deltaX, deltaY); 
         		if ( captives > 0){
         			capturesFound = true;
-        			for ( int i = 1; i <= captives; i++)
-        				board[place.col+deltaX*i][place.row+deltaY*i]=currentPlayer;
+        			if ( trailSize + captives > undoTrail.length )
+        				undoTrail = Arrays.copyOf(undoTrail, 2*undoTrail.length);
+        			for ( int i = 1; i <= captives; i++){
+        				board[col+deltaX*i][row+deltaY*i]=currentPlayer;
+        				int turned = (col+deltaX*i)*size + row+deltaY*i;
+        				undoTrail[trailSize++] = turned;
+        				hash ^= zobristKeys[2*turned] ^ zobristKeys[2*turned + 1];
+        			}
         		}
         	}		
     	}
     	
     	if ( capturesFound ){
     		// Place the token at the given place
-    		board[place.col][place.row] = currentPlayer;
+    		board[col][row] = currentPlayer;
+    		hash ^= zobristKeys[2*square + currentPlayer - 1];
+    		undoTrailMarks[moveCount] = trailMark;
+    		pushMove(square, oldHash);
     		this.changePlayer();
     		return true;
     	}
@@ -143,44 +354,198 @@ public class GameState {
     	}
     }
 
+	/**
+	 * Takes back the last move made with makeMove (or insertToken): the token is removed, the turned 
+	 * tokens are given back to the opponent and the player who made the move is in turn again.
+	 * Passes made with changePlayer in between are not recorded, so they should be undone by the caller.
+	 */
+    public void undoMove(){
+    	moveCount--;
+    	int col = undoSquares[moveCount] / size;
+    	int row = undoSquares[moveCount] % size;
+    	int player = undoPlayers[moveCount];
+    	int opponent = player == 1 ? 2 : 1;
+    	board[col][row] = 0;
+    	if ( bitboard ){
+    		long flips = undoFlips[moveCount];
+    		long placed = 1L << (col*8 + row);
+    		if ( player == 1 ){
+    			black &= ~(flips | placed);
+    			white |= flips;
+    		}
+    		else {
+    			white &= ~(flips | placed);
+    			black |= flips;
+    		}
+    		for (long f = flips; f != 0; f &= f - 1){
+    			int s = Long.numberOfTrailingZeros(f);
+    			board[s >>> 3][s & 7] = opponent;
+    		}
+    	}
+    	else {
+    		int trailMark = undoTrailMarks[moveCount];
+    		while ( trailSize > trailMark ){
+    			int s = undoTrail[--trailSize];
+    			board[s / size][s % size] = opponent;
+    		}
+    	}
+    	currentPlayer = player;
+    	hash = undoHashes[moveCount];
+    	mobility = -1;
+    	opponentMobility = -1;
+    }
+
+    /**
+     * Returns the place of the last move on the undo stack as col*size+row, or -1 if no move was made.
+     */
+    public int getLastMoveSquare(){
+    	return moveCount == 0 ? -1 : undoSquares[moveCount-1];
+    }
+
+    /**
+     * Puts the places (as col*size+row) of the tokens turned by the last move on the undo stack into
+     * squares, which should have room for size*size entries, and returns how many there are.
+     */
+    public int getLastFlips(int[] squares){
+    	if ( moveCount == 0 )
+    		return 0;
+    	int count = 0;
+    	if ( bitboard ){
+    		for (long f = undoFlips[moveCount-1]; f != 0; f &= f - 1){
+    			int s = Long.numberOfTrailingZeros(f);
+    			squares[count++] = (s >>> 3)*size + (s & 7);
+    		}
+    	}
+    	else {
+    		for (int i = undoTrailMarks[moveCount-1]; i < trailSize; i++)
+    			squares[count++] = undoTrail[i];
+    	}
+    	return count;
+    }
+
+    /**
+     * Records the place and player of a move that has just been made, and the hash key from before the move, 
+     * on the undo stack, and forgets the numbers of legal moves.
+     */
+    private void pushMove(int square, long oldHash){
+    	undoSquares[moveCount] = square;
+    	undoPlayers[moveCount] = currentPlayer;
+    	undoHashes[moveCount] = oldHash;
+    	moveCount++;
+    	mobility = -1;
+    	opponentMobility = -1;
+    }
+
     /**
      * Returns a list of all the positions on the board that constitutes a legal move for the current player.
+     * Each position is listed once. See legalMoves(int[]) for a version that does not allocate.
      */
     public ArrayList<Position> legalMoves(){
-    	ArrayList<Position> posPlaces = new ArrayList<Position>();
+    	int count = legalMoves(moveBuffer);
+    	ArrayList<Position> legalPlaces = new ArrayList<Position>(count);
+    	for (int i = 0; i < count; i++)
+    		legalPlaces.add(new Position(moveBuffer[i] / size, moveBuffer[i] % size));
+    	return legalPlaces;
+    }
+
+    /**
+     * Writes the legal moves of the current player into squares, as col*size+row and in the same order as
+     * legalMoves(), and returns how many there are. Each move is written once. Nothing is allocated.
+     * @param squares room for at least size*size moves
+     */
+    public int legalMoves(int[] squares){
+    	int count = 0;
+    	if ( bitboard ){
+    		for (long moves = legalMoveBits(); moves != 0; moves &= moves - 1){
+    			int square = Long.numberOfTrailingZeros(moves);
+    			squares[count++] = (square >>> 3)*size + (square & 7);
+    		}
+    		mobility = count;
+    		return count;
+    	}
     	for (int i = 0; i < this.size; i++){
     		for (int j = 0; j < this.size; j++){
-    			if ( board[i][j] == 0 ){
-    				posPlaces.add(new Position(i,j));
-    			}
+    			if ( board[i][j] != 0 )
+    				continue;
+    			// a place is listed once, even if it captures in several directions
+    			if ( isLegal(currentPlayer, i, j) )
+    				squares[count++] = i*size + j;
     		}
     	}
-    	ArrayList<Position> legalPlaces = new ArrayList<Position>();
-    	for (Position p: posPlaces){
-    		for (int deltaX = -1; deltaX <= 1; deltaX++){
-    			for (int deltaY = -1; deltaY <= 1; deltaY++){
-    				if ( captureInDirection(p, deltaX, deltaY) > 0 ){
-    	    			legalPlaces.add(p);
-    				}
-    			}
+    	mobility = count;
+    	return count;
+    }
+
+    /**
+     * Returns the number of legal moves of the given player.
+     */
+    private int countMoves(int player){
+    	if ( bitboard )
+    		return Long.bitCount(player == 1 ? moves(black, white, onBoard) : moves(white, black, onBoard));
+    	int count = 0;
+    	for (int i = 0; i < size; i++){
+    		for (int j = 0; j < size; j++){
+    			if ( board[i][j] == 0 && isLegal(player, i, j) )
+    				count++;
     		}
     	}
-    	return legalPlaces;
-    }	
+    	return count;
+    }
+
+    /**
+     * Returns true if the given player has a legal move, without necessarily finding all of them.
+     */
+    private boolean canMove(int player){
+    	if ( bitboard )
+    		return (player == 1 ? moves(black, white, onBoard) : moves(white, black, onBoard)) != 0;
+    	for (int i = 0; i < size; i++){
+    		for (int j = 0; j < size; j++){
+    			if ( board[i][j] == 0 && isLegal(player, i, j) )
+    				return true;
+    		}
+    	}
+    	return false;
+    }
+
+    /**
+     * Returns true if the given player can put a token at the (empty) place (col, row), i.e. captures in at
+     * least one direction.
+     */
+    private boolean isLegal(int player, int col, int row){
+    	for (int deltaX = -1; deltaX <= 1; deltaX++){
+    		for (int deltaY = -1; deltaY <= 1; deltaY++){
+    			if ( captureInDirection(player, col, row, deltaX, deltaY) > 0 )
+    				return true;
+    		}
+    	}
+    	return false;
+    }
+
+    /**
+     * Returns the legal moves of the current player as a bitboard: bit col*8+row is set if (col, row) is a
+     * legal move. Only for boards with bitboards (see hasBitboards).
+     */
+    public long legalMoveMask(){
+    	if ( !bitboard )
+    		throw new IllegalStateException("Boards of size " + size + " have no bitboards");
+    	return legalMoveBits();
+    }
     
     /**
      * Checks how many tokens of the opponent the player can capture in the direction given by deltaX and deltaY
      * if the player puts a token at the given position.
-     * @param p A position on the board
+     * @param player The player putting the token
+     * @param col The column of a position on the board
+     * @param row The row of a position on the board
      * @param deltaX The step to be taken in the x-direction. Should be -1 (left), 0 (none), or 1 (right).
      * @param deltaY The step to be taken in the delta direction. Should be -1 (up), 0 (none), or 1 (down).
      */
-    private int captureInDirection(Position p, int deltaX, int deltaY){
-    	int opponent = (currentPlayer == 1 ? 2 : 1); 
+    private int captureInDirection(int player, int col, int row, int deltaX, int deltaY){
+    	int opponent = (player == 1 ? 2 : 1); 
         
     	int captured = 0;
-    	int cc = p.col;
-    	int rr = p.row;
+    	int cc = col;
+    	int rr = row;
         while ( 0 <= cc+deltaX && cc+deltaX < size && 0 <= rr+deltaY && rr+deltaY < size 
     			&& board[cc+deltaX][rr+deltaY] == opponent ){ 
         	cc = cc + deltaX;
@@ -188,11 +553,113 @@ public class GameState {
         	captured++;
         }
         if ( 0 <= cc+deltaX && cc+deltaX < size  && 0 <= rr+deltaY && rr+deltaY < size 
-    			&& board[cc+deltaX][rr+deltaY] == currentPlayer && captured > 0 ){
+    			&& board[cc+deltaX][rr+deltaY] == player && captured > 0 ){
         	return captured;
         }
         else
         	return 0;
     }
 
+    //************* Bitboard helpers ****************//
+    /**
+     * Puts a token for the current player at the given (empty, on-board) place using the bitboards, 
+     * and mirrors the changes into the 2-dimensional board.
+     */
+    private boolean makeMoveBitboard(int col, int row){
+    	int square = col*8 + row;
+    	long own = currentPlayer == 1 ? black : white;
+    	long opp = currentPlayer == 1 ? white : black;
+    	long flips = flips(own, opp, 1L << square);
+    	if ( flips == 0 )
+    		return false;
+
+    	own |= flips | (1L << square);
+    	opp &= ~flips;
+    	if ( currentPlayer == 1 ){
+    		black = own;
+    		white = opp;
+    	}
+    	else {
+    		white = own;
+    		black = opp;
+    	}
+    	long oldHash = hash;
+    	for (long f = flips; f != 0; f &= f - 1){
+    		int s = Long.numberOfTrailingZeros(f);
+    		board[s >>> 3][s & 7] = currentPlayer;
+    		int key = 2*((s >>> 3)*size + (s & 7));
+    		hash ^= zobristKeys[key] ^ zobristKeys[key + 1];
+    	}
+    	board[col][row] = currentPlayer;
+    	hash ^= zobristKeys[2*(col*size + row) + currentPlayer - 1];
+    	undoFlips[moveCount] = flips;
+    	pushMove(col*size + row, oldHash);
+    	this.changePlayer();
+    	return true;
+    }
+
+    /**
+     * Returns the bits of the squares where the current player can legally put a token.
+     */
+    private long legalMoveBits(){
+    	if ( currentPlayer == 1 )
+    		return moves(black, white, onBoard);
+    	else
+    		return moves(white, black, onBoard);
+    }
+
+    /**
+     * Returns the bits of all squares where a player owning the tokens in own can capture tokens in opp.
+     * Each direction is filled with a parallel prefix (Kogge-Stone) fill, which covers runs of up to six 
+     * opponent tokens in four shifts.
+     */
+    static long moves(long own, long opp, long onBoard){
+    	long empty = onBoard & ~(own | opp);
+    	long moves = 0;
+    	for (int d = 0; d < 8; d++){
+    		long pro2 = opp & shift(opp, d);
+    		long x = shift(own, d) & opp;
+    		x |= shift(x, d) & opp;
+    		x |= shift2(x, d) & pro2;
+    		x |= shift2(x, d) & pro2;
+    		moves |= shift(x, d) & empty;
+    	}
+    	return moves;
+    }
+
+    /**
+     * Returns the bits of the opponent tokens in opp that are turned when a token is put on the square 
+     * given by move (a single bit) by the player owning own.
+     */
+    static long flips(long own, long opp, long move){
+    	long flips = 0;
+    	for (int d = 0; d < 8; d++){
+    		long line = 0;
+    		long x = shift(move, d);
+    		while ( (x & opp) != 0 ){
+    			line |= x;
+    			x = shift(x, d);
+    		}
+    		if ( (x & own) != 0 )
+    			flips |= line;
+    	}
+    	return flips;
+    }
+
+    /**
+     * Moves every bit one step in direction d, dropping bits that would leave the board.
+     */
+    private static long shift(long b, int d){
+    	int s = SHIFTS[d];
+    	return (s > 0 ? b << s : b >>> -s) & MASKS[d];
+    }
+
+    /**
+     * Moves every bit two steps in direction d, dropping bits that would leave the board.
+     */
+    private static long shift2(long b, int d){
+    	int s = 2*SHIFTS[d];
+    	return (s > 0 ? b << s : b >>> -s) & MASKS2[d];
+    }
+
 }
@@ -0,0 +1,367 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Monte Carlo tree search (UCT): instead of a heuristic evaluation, states are valued by the results of
+ * games played on from them with random moves (playouts). Every iteration walks down the tree from the root,
+ * choosing the child with the best upper confidence bound (the share of points won so far plus a bonus for
+ * children that were tried less often), adds the children of the first state that has none yet, plays out
+ * one of them and adds the result to every node on the way back up. The move played is the most visited
+ * child of the root.
+ *
+ * The search runs for a fixed time per move on several threads that share one tree (tree parallelism).
+ * A thread on its way down adds a virtual loss to every node it passes, which makes the other threads
+ * prefer other paths until its result is in. The statistics are updated with atomic operations, and a node
+ * is expanded by the first thread that gets to it.
+ *
+ * Nodes come from a pool of preallocated arrays that is reused for every move, and each thread plays on its
+ * own GameState with makeMove/undoMove and a primitive move list, so the search itself does not allocate.
+ * When the pool is full the tree stops growing and the remaining time is spent on playouts from its leaves.
+ */
+public class MCTSAI implements IOthelloAI {
+
+	private static final long MOVE_MILLIS = 1000;
+	private static final int MAX_NODES = 1 << 20;
+	private static final double EXPLORATION = 1.4; // about sqrt(2)
+	private static final int PASS = -1; // the move of a node where the player in turn has to pass
+
+	// States of the expansion of a node
+	private static final int NEW = 0;
+	private static final int EXPANDING = 1;
+	private static final int EXPANDED = 2;
+
+	// The node pool. Node 0 is the root; the children of a node are next to each other. The points of a
+	// node are those of the player who made its move: 2 per won playout and 1 per draw.
+	private final int capacity;
+	private final int[] firstChild;
+	private final int[] childCount;
+	private final int[] move;					// col*size+row, or PASS
+	private final AtomicIntegerArray expansion;
+	private final AtomicIntegerArray visits;
+	private final AtomicIntegerArray virtualLosses;
+	private final AtomicLongArray points;
+	private final AtomicInteger used = new AtomicInteger();
+
+	private int threads;
+	private ExecutorService helperPool;
+	private long moveMillis = MOVE_MILLIS;
+	private volatile boolean stopped;		// by stop(), until clearStop()
+	private volatile boolean interrupted;	// the thread of the current search was interrupted
+	private long playouts; // in the last search
+
+	public MCTSAI() {
+		this(OthelloAI.defaultThreads(), MAX_NODES);
+	}
+
+	/**
+	 * @param threads number of threads searching the tree
+	 * @param maxNodes size of the node pool
+	 */
+	public MCTSAI(int threads, int maxNodes) {
+		capacity = maxNodes;
+		firstChild = new int[maxNodes];
+		childCount = new int[maxNodes];
+		move = new int[maxNodes];
+		expansion = new AtomicIntegerArray(maxNodes);
+		visits = new AtomicIntegerArray(maxNodes);
+		virtualLosses = new AtomicIntegerArray(maxNodes);
+		points = new AtomicLongArray(maxNodes);
+		setThreads(threads);
+	}
+
+	/**
+	 * Sets the number of threads that search the tree.
+	 */
+	public void setThreads(int threads) {
+		this.threads = Math.max(1, threads);
+		if (helperPool != null)
+			helperPool.shutdown();
+		helperPool = null;
+		if (this.threads > 1) {
+			helperPool = Executors.newFixedThreadPool(this.threads - 1, r -> {
+				Thread t = new Thread(r, "MCTSAI helper");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+	}
+
+	/**
+	 * Sets the time (in milliseconds) that decideMove(GameState) searches.
+	 */
+	public void setMoveTime(long millis) {
+		moveMillis = millis;
+	}
+
+	/**
+	 * Makes a decideMove that is running on another thread return as soon as possible with the most
+	 * visited move so far. A decideMove that has not started yet returns at once as well: the stop holds
+	 * until clearStop(). Interrupting the thread of decideMove stops only its current search.
+	 */
+	public void stop() {
+		stopped = true;
+	}
+
+	/**
+	 * Lets decideMove search again after stop(). Call it when a new move is requested, before decideMove is
+	 * called on the thread that searches, so that a stop() in between is not lost.
+	 */
+	public void clearStop() {
+		stopped = false;
+	}
+
+	/**
+	 * Returns the number of playouts of the last search.
+	 */
+	public long getPlayoutCount() {
+		return playouts;
+	}
+
+	/**
+	 * Returns the number of nodes in the tree of the last search.
+	 */
+	public int getNodeCount() {
+		return used.get();
+	}
+
+	public Position decideMove(GameState s) {
+		return decideMove(s, moveMillis);
+	}
+
+	/**
+	 * Searches for the given time (in milliseconds) and returns the most visited move, or (-1, -1) if the
+	 * player in turn cannot move.
+	 */
+	public Position decideMove(GameState s, long timeMillis) {
+		int size = s.getBoard().length;
+		ArrayList<Position> moves = s.legalMoves();
+		if (moves.isEmpty())
+			return new Position(-1, -1);
+		if (moves.size() == 1)
+			return moves.get(0);
+		long deadline = System.nanoTime() + timeMillis * 1000000;
+		interrupted = false;
+
+		used.set(1);
+		resetNode(0, PASS);
+
+		Worker[] workers = new Worker[threads];
+		List<Future<?>> helpers = new ArrayList<Future<?>>();
+		for (int i = 0; i < threads; i++)
+			workers[i] = new Worker(s, deadline, i);
+		for (int i = 1; i < threads; i++)
+			helpers.add(helperPool.submit(workers[i]));
+		workers[0].run();
+		for (Future<?> helper : helpers) {
+			while (true) {
+				try {
+					helper.get();
+					break;
+				} catch (InterruptedException e) {
+					// stop, but wait for the helpers so that they are off the tree before it is read and reused
+					interrupted = true;
+				} catch (ExecutionException e) {
+					throw new RuntimeException(e.getCause());
+				}
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+		playouts = 0;
+		for (Worker worker : workers)
+			playouts += worker.playouts;
+
+		int best = -1;
+		for (int c = firstChild[0]; c < firstChild[0] + childCount[0]; c++) {
+			if (best < 0 || visits.get(c) > visits.get(best))
+				best = c;
+		}
+		if (best < 0)
+			return moves.get(0); // stopped before the root was expanded
+		return new Position(move[best] / size, move[best] % size);
+	}
+
+	private void resetNode(int node, int square) {
+		move[node] = square;
+		childCount[node] = 0;
+		visits.set(node, 0);
+		virtualLosses.set(node, 0);
+		points.set(node, 0);
+		expansion.set(node, NEW);
+	}
+
+	/**
+	 * One search thread, with its own copy of the root state. The state follows the path of an iteration
+	 * down the tree and through the playout, and is then taken back to the root.
+	 */
+	private final class Worker implements Runnable {
+		private final GameState state;
+		private final long deadline;
+		private final SplittableRandom random;
+		private final int[] moves;		// move list of the current state
+		private final int[] path;		// nodes from the root down
+		private final int[] movers;		// movers[i]: the player who made the move of path[i]
+		private final boolean[] undo;	// the steps taken from the root: true for a move, false for a pass
+		private int steps;
+		private long playouts;
+
+		Worker(GameState s, long deadline, int id) {
+			int squares = s.getBoard().length * s.getBoard().length;
+			state = new GameState(s.getBoard(), s.getPlayerInTurn());
+			this.deadline = deadline;
+			random = new SplittableRandom(System.nanoTime() + id);
+			moves = new int[squares];
+			// a game has at most squares moves and a pass before every one of them
+			path = new int[2 * squares + 2];
+			movers = new int[2 * squares + 2];
+			undo = new boolean[2 * squares + 2];
+		}
+
+		public void run() {
+			while (System.nanoTime() < deadline && !stopped && !interrupted && !Thread.currentThread().isInterrupted()) {
+				iterate();
+				playouts++;
+			}
+		}
+
+		/**
+		 * Selection, expansion, playout and backpropagation.
+		 */
+		private void iterate() {
+			int node = 0;
+			int length = 0;
+			while (true) {
+				path[length++] = node;
+				if (expansion.get(node) != EXPANDED) {
+					// a node that another thread is expanding, or that does not fit in the pool, is a leaf
+					if (!expansion.compareAndSet(node, NEW, EXPANDING))
+						break;
+					if (!expand(node)) {
+						expansion.set(node, NEW);
+						break;
+					}
+					expansion.set(node, EXPANDED);
+				}
+				if (childCount[node] == 0)
+					break; // the game is over
+				int child = select(node);
+				virtualLosses.incrementAndGet(child);
+				movers[length] = state.getPlayerInTurn();
+				step(move[child]);
+				node = child;
+				if (visits.get(child) == 0) {
+					path[length++] = child;
+					break;
+				}
+			}
+
+			int winner = playout();
+			for (int i = 1; i < length; i++) {
+				int n = path[i];
+				points.addAndGet(n, winner == 0 ? 1 : winner == movers[i] ? 2 : 0);
+				visits.incrementAndGet(n);
+				virtualLosses.decrementAndGet(n);
+			}
+			visits.incrementAndGet(0);
+			while (steps > 0) {
+				if (undo[--steps])
+					state.undoMove();
+				else
+					state.changePlayer();
+			}
+		}
+
+		/**
+		 * Returns the child with the best upper confidence bound. A virtual loss counts as a visit without points.
+		 */
+		private int select(int node) {
+			int first = firstChild[node];
+			double logVisits = Math.log(Math.max(1, visits.get(node)));
+			int best = first;
+			double bestBound = -1;
+			for (int c = first; c < first + childCount[node]; c++) {
+				int n = visits.get(c) + virtualLosses.get(c);
+				if (n == 0)
+					return c;
+				double bound = points.get(c) / (2.0 * n) + EXPLORATION * Math.sqrt(logVisits / n);
+				if (bound > bestBound) {
+					bestBound = bound;
+					best = c;
+				}
+			}
+			return best;
+		}
+
+		/**
+		 * Adds the children of the node, which is the current state. Returns false if the pool is full.
+		 */
+		private boolean expand(int node) {
+			int count = state.legalMoves(moves);
+			if (count == 0 && state.opponentHasLegalMove()) {
+				moves[0] = PASS;
+				count = 1;
+			}
+			// reserve the children, but never beyond the end of the pool
+			int first;
+			do {
+				first = used.get();
+				if (first + count > capacity)
+					return false;
+			} while (!used.compareAndSet(first, first + count));
+			for (int i = 0; i < count; i++)
+				resetNode(first + i, moves[i]);
+			firstChild[node] = first;
+			childCount[node] = count;
+			return true;
+		}
+
+		/**
+		 * Plays random moves to the end of the game and returns the winner (1 or 2), or 0 for a draw.
+		 */
+		private int playout() {
+			while (true) {
+				int count = state.legalMoves(moves);
+				if (count > 0)
+					step(moves[random.nextInt(count)]);
+				else if (state.opponentHasLegalMove())
+					step(PASS);
+				else
+					break;
+			}
+			int black = 0;
+			int white = 0;
+			if (state.hasBitboards()) {
+				black = Long.bitCount(state.getTokenBits(1));
+				white = Long.bitCount(state.getTokenBits(2));
+			}
+			else {
+				for (int[] column : state.getBoard()) {
+					for (int token : column) {
+						black += token == 1 ? 1 : 0;
+						white += token == 2 ? 1 : 0;
+					}
+				}
+			}
+			return black > white ? 1 : white > black ? 2 : 0;
+		}
+
+		private void step(int square) {
+			if (square == PASS) {
+				state.changePlayer();
+				undo[steps++] = false;
+			}
+			else {
+				state.makeMove(square);
+				undo[steps++] = true;
+			}
+		}
+	}
+}
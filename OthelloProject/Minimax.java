@@ -12,7 +12,9 @@ public class Minimax {
 
     public Position minimaxSearch(GameState s) {
         computePositionUtility(s);
-        UtilityMove result = maxValue(s, Integer.MIN_VALUE, Integer.MAX_VALUE, 0);
+        // search on a private copy, which is updated in place by makeMove/undoMove
+        GameState root = new GameState(s.getBoard(), s.getPlayerInTurn());
+        UtilityMove result = maxValue(root, Integer.MIN_VALUE, Integer.MAX_VALUE, 0);
         if (s.legalMoves().size() == 1)
             return s.legalMoves().get(0);
         return result.move;
@@ -101,8 +103,9 @@ public class Minimax {
         Position bestMove = null;
         for (Position a : s.legalMoves()) {
             // find move that results in highest utility
-            GameState newState = result(s, a);
-            UtilityMove m = minValue(newState, alpha, beta, depth + 1);
+            s.makeMove(a);
+            UtilityMove m = minValue(s, alpha, beta, depth + 1);
+            s.undoMove();
 
             if (m.utility > bestUtility) {
                 bestUtility = m.utility; // override best utility
@@ -130,8 +133,9 @@ public class Minimax {
         for (Position a : s.legalMoves()) {
             // find move that results in lowest utility
 
-            GameState newState = result(s, a);
-            UtilityMove m = maxValue(newState, alpha, beta, depth + 1);
+            s.makeMove(a);
+            UtilityMove m = maxValue(s, alpha, beta, depth + 1);
+            s.undoMove();
 
             if (m.utility < bestUtility) {
                 bestUtility = m.utility; // override best utility
@@ -155,14 +159,6 @@ public class Minimax {
         return s.isFinished();
     }
 
-    private GameState result(GameState s, Position a) {
-        // return state that results from applying action `a` in state `s`
-        GameState newState = new GameState(s.getBoard(), s.getPlayerInTurn());
-        // make copy of game state, and simulate move in the new state
-        newState.insertToken(a);
-        return newState;
-    }
-
     class UtilityMove {
         public final double utility;
         public final Position move;
@@ -0,0 +1,123 @@
+/**
+ * Orders the moves of a node so that alpha-beta tries the moves most likely to cause a cutoff first:
+ * 1. the best move stored in the transposition table for the state (the hash move),
+ * 2. the killer moves of the ply, i.e. the last two moves that caused a cutoff at the same depth,
+ * 3. the remaining moves by a static class of the square (corners first, X-squares last) and, within
+ *    the same class, by the history table, which counts how often (and how deep) each square caused a cutoff.
+ * Moves are identified by their square col*size+row.
+ */
+public class MoveOrderer {
+
+	private static final int HASH_MOVE_SCORE = 1 << 30;
+	private static final int KILLER_SCORE = 1 << 29;
+	private static final int CLASS_SCORE = 1 << 24; // the history is kept below this
+
+	private final int size;
+	private final int[] squareClass;	// 2 for corners, 0 for X-squares, 1 for all other squares
+	private final int[][] killers;		// two killer squares per ply, -1 if none
+	private final int[] history;		// per square
+	private final int[][] scores;		// buffer per ply for the scores of the moves being ordered
+
+	public MoveOrderer(int size) {
+		this.size = size;
+		squareClass = new int[size * size];
+		for (int col = 0; col < size; col++) {
+			for (int row = 0; row < size; row++) {
+				boolean edgeCol = col == 0 || col == size - 1;
+				boolean edgeRow = row == 0 || row == size - 1;
+				boolean xCol = col == 1 || col == size - 2;
+				boolean xRow = row == 1 || row == size - 2;
+				if (edgeCol && edgeRow)
+					squareClass[col * size + row] = 2;
+				else if (xCol && xRow)
+					squareClass[col * size + row] = 0;
+				else
+					squareClass[col * size + row] = 1;
+			}
+		}
+		killers = new int[size * size + 1][2];
+		history = new int[size * size];
+		scores = new int[size * size + 1][size * size];
+		clear();
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Forgets all killer moves and history.
+	 */
+	public void clear() {
+		for (int[] k : killers) {
+			k[0] = -1;
+			k[1] = -1;
+		}
+		for (int i = 0; i < history.length; i++)
+			history[i] = 0;
+	}
+
+	/**
+	 * Prepares for a search from a state the given number of plies after the root of the last search: ply p
+	 * of the new search was ply p + plies of the last one, so the killer moves move up by that many plies, and
+	 * the history is halved so that it soon reflects the new position more than the old one.
+	 */
+	public void advance(int plies) {
+		for (int ply = 0; ply < killers.length; ply++) {
+			int from = ply + plies;
+			killers[ply][0] = from < killers.length ? killers[from][0] : -1;
+			killers[ply][1] = from < killers.length ? killers[from][1] : -1;
+		}
+		for (int i = 0; i < history.length; i++)
+			history[i] /= 2;
+	}
+
+	/**
+	 * Sorts the first count moves (squares) of a node at the given ply, best first.
+	 * @param hashMove the square of the hash move, or -1 if there is none
+	 */
+	public void order(int[] moves, int count, int hashMove, int ply) {
+		int[] score = scores[ply];
+		for (int i = 0; i < count; i++) {
+			int square = moves[i];
+			if (square == hashMove)
+				score[i] = HASH_MOVE_SCORE;
+			else if (square == killers[ply][0])
+				score[i] = KILLER_SCORE + 1;
+			else if (square == killers[ply][1])
+				score[i] = KILLER_SCORE;
+			else
+				score[i] = squareClass[square] * CLASS_SCORE + history[square];
+		}
+		// insertion sort, as there are only a few moves; stable, so equal moves keep the board order
+		for (int i = 1; i < count; i++) {
+			int s = score[i];
+			int m = moves[i];
+			int j = i - 1;
+			while (j >= 0 && score[j] < s) {
+				score[j + 1] = score[j];
+				moves[j + 1] = moves[j];
+				j--;
+			}
+			score[j + 1] = s;
+			moves[j + 1] = m;
+		}
+	}
+
+	/**
+	 * Records that the move (square) caused a cutoff at the given ply with the given number of plies searched
+	 * below it.
+	 */
+	public void cutoff(int square, int ply, int depthLeft) {
+		if (killers[ply][0] != square) {
+			killers[ply][1] = killers[ply][0];
+			killers[ply][0] = square;
+		}
+		history[square] += depthLeft * depthLeft;
+		if (history[square] >= CLASS_SCORE) {
+			// keep the history below the class score, and let old cutoffs count less
+			for (int i = 0; i < history.length; i++)
+				history[i] /= 2;
+		}
+	}
+}
@@ -0,0 +1,231 @@
+import java.io.DataOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Opening book: for states seen in earlier games, the moves that were played and how well they did.
+ *
+ * The book is a binary file of fixed-size entries sorted by state, which is memory mapped and searched
+ * with binary search, so opening it costs nothing and lookups only touch the pages they need. States are
+ * stored in canonical form: of the 8 rotations and reflections of the board, the one with the smallest
+ * bitboards, so a state and its mirror images share their entries. Only boards of size 8 or less
+ * (those with bitboards) are supported.
+ *
+ * File format: int MAGIC, int board size, int number of entries, followed by the entries. An entry is
+ * long black bitboard, long white bitboard, int (player in turn << 8 | move square col*8+row), int games,
+ * int points (2 per win and 1 per draw for the player who made the move); all in canonical orientation.
+ *
+ * The mapping stays in place until the OpeningBook is garbage collected. On Windows that keeps the file
+ * from being replaced, so OpeningBookBuilder cannot update a book that a running engine has open.
+ */
+public class OpeningBook {
+
+	public static final int MAGIC = 0x4F424B31; // "OBK1"
+	static final int HEADER_BYTES = 12;
+	static final int ENTRY_BYTES = 28;
+	private static final int MIN_GAMES = 2; // a move needs this many games before it is played from the book
+
+	private final ByteBuffer entries;
+	private final int size;
+	private final int count;
+
+	/**
+	 * Maps the book in the given file into memory.
+	 * @throws IOException if the file cannot be read or is not an opening book
+	 */
+	public OpeningBook(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (channel.size() < HEADER_BYTES || buffer.getInt(0) != MAGIC)
+				throw new IOException(file + " is not an opening book");
+			size = buffer.getInt(4);
+			count = buffer.getInt(8);
+			if (channel.size() < HEADER_BYTES + (long) count * ENTRY_BYTES)
+				throw new IOException(file + " is truncated");
+			entries = buffer;
+		}
+	}
+
+	/**
+	 * Returns the board size of the states in the book.
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of (state, move) entries in the book.
+	 */
+	public int getEntryCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the book move with the best result for the player in turn, or null if the state is not in the book
+	 * or none of its moves has been played often enough.
+	 */
+	public Position lookup(GameState s) {
+		if (!s.hasBitboards() || s.getBoard().length != size)
+			return null;
+		int symmetry = canonicalSymmetry(s);
+		long black = transform(s.getTokenBits(1), symmetry, size);
+		long white = transform(s.getTokenBits(2), symmetry, size);
+		int player = s.getPlayerInTurn();
+
+		int bestSquare = -1;
+		double bestScore = -1;
+		for (int i = firstEntry(black, white, player); i < count && matches(i, black, white, player); i++) {
+			int games = entries.getInt(offset(i) + 20);
+			double score = (double) entries.getInt(offset(i) + 24) / (2 * games);
+			if (games >= MIN_GAMES && score > bestScore) {
+				bestScore = score;
+				bestSquare = entries.getInt(offset(i) + 16) & 0xFF;
+			}
+		}
+		if (bestSquare < 0)
+			return null;
+		int square = transformSquare(bestSquare, inverse(symmetry), size);
+		return new Position(square >>> 3, square & 7);
+	}
+
+	/**
+	 * Writes a book file from entries {black, white, player << 8 | move, games, points}, which must be in canonical
+	 * orientation. The entries are sorted here. The file is replaced at once, so a book mapped by a running
+	 * engine is never seen half written. On Windows a file cannot be replaced while it is mapped, so this
+	 * fails as long as an engine in any process holds the old book open; stop such engines first.
+	 */
+	static void write(Path file, int size, List<long[]> list) throws IOException {
+		list.sort(OpeningBook::compare);
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp.toFile())))) {
+			out.writeInt(MAGIC);
+			out.writeInt(size);
+			out.writeInt(list.size());
+			for (long[] e : list) {
+				out.writeLong(e[0]);
+				out.writeLong(e[1]);
+				out.writeInt((int) e[2]);
+				out.writeInt((int) e[3]);
+				out.writeInt((int) e[4]);
+			}
+		}
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Orders entries by black bitboard, white bitboard, then player and move.
+	 */
+	static int compare(long[] a, long[] b) {
+		if (a[0] != b[0])
+			return Long.compare(a[0], b[0]);
+		if (a[1] != b[1])
+			return Long.compare(a[1], b[1]);
+		return Long.compare(a[2], b[2]);
+	}
+
+	/**
+	 * Returns the index of the first entry that is not smaller than the state (binary search).
+	 */
+	private int firstEntry(long black, long white, int player) {
+		int low = 0;
+		int high = count;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			int o = offset(mid);
+			int c = Long.compare(entries.getLong(o), black);
+			if (c == 0)
+				c = Long.compare(entries.getLong(o + 8), white);
+			if (c == 0)
+				c = Integer.compare(entries.getInt(o + 16) >>> 8, player);
+			if (c < 0)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	private boolean matches(int i, long black, long white, int player) {
+		int o = offset(i);
+		return entries.getLong(o) == black && entries.getLong(o + 8) == white && entries.getInt(o + 16) >>> 8 == player;
+	}
+
+	private static int offset(int i) {
+		return HEADER_BYTES + i * ENTRY_BYTES;
+	}
+
+	//************ Symmetries ****************//
+	// Symmetry 0 is the identity, 1-3 rotate by 90, 180 and 270 degrees, 4 and 5 mirror the columns and
+	// the rows, 6 and 7 mirror in the two diagonals.
+
+	/**
+	 * Returns the symmetry that takes the state to its canonical form: the smallest (black, white) bitboards.
+	 */
+	static int canonicalSymmetry(GameState s) {
+		int size = s.getBoard().length;
+		long black = s.getTokenBits(1);
+		long white = s.getTokenBits(2);
+		int best = 0;
+		long bestBlack = black;
+		long bestWhite = white;
+		for (int symmetry = 1; symmetry < 8; symmetry++) {
+			long b = transform(black, symmetry, size);
+			long w = transform(white, symmetry, size);
+			if (b < bestBlack || (b == bestBlack && w < bestWhite)) {
+				best = symmetry;
+				bestBlack = b;
+				bestWhite = w;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Returns the bitboard with every bit moved by the symmetry.
+	 */
+	static long transform(long bits, int symmetry, int size) {
+		long result = 0;
+		for (long b = bits; b != 0; b &= b - 1)
+			result |= 1L << transformSquare(Long.numberOfTrailingZeros(b), symmetry, size);
+		return result;
+	}
+
+	/**
+	 * Returns the square (col*8+row) that the symmetry moves the given square to.
+	 */
+	static int transformSquare(int square, int symmetry, int size) {
+		int c = square >>> 3;
+		int r = square & 7;
+		int n = size - 1;
+		switch (symmetry) {
+			case 1: return r * 8 + (n - c);
+			case 2: return (n - c) * 8 + (n - r);
+			case 3: return (n - r) * 8 + c;
+			case 4: return (n - c) * 8 + r;
+			case 5: return c * 8 + (n - r);
+			case 6: return r * 8 + c;
+			case 7: return (n - r) * 8 + (n - c);
+			default: return square;
+		}
+	}
+
+	/**
+	 * Returns the symmetry that undoes the given one.
+	 */
+	static int inverse(int symmetry) {
+		if (symmetry == 1)
+			return 3;
+		if (symmetry == 3)
+			return 1;
+		return symmetry;
+	}
+}
@@ -0,0 +1,150 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Grows an opening book by self-play: OthelloAI plays against itself, starting with a few random moves so
+ * that the games differ, and every move made in the first plies of a game is added to the book together
+ * with the result of the game for the player who made it. Entries already in the book are kept and their
+ * statistics are added to.
+ *
+ * Run as: java OpeningBookBuilder file [games] [size] [book plies] [milliseconds per move] [random plies]
+ */
+public class OpeningBookBuilder {
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: java OpeningBookBuilder file [games] [size] [book plies] [milliseconds per move] [random plies]");
+			System.exit(1);
+		}
+		Path file = Paths.get(args[0]);
+		int games = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+		int size = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+		int bookPlies = args.length > 3 ? Integer.parseInt(args[3]) : 12;
+		long moveMillis = args.length > 4 ? Long.parseLong(args[4]) : 50;
+		int randomPlies = args.length > 5 ? Integer.parseInt(args[5]) : 3;
+		build(file, size, games, bookPlies, moveMillis, randomPlies, System.nanoTime());
+	}
+
+	/**
+	 * Plays the given number of self-play games and adds their first bookPlies moves to the book in the file,
+	 * which is created if it does not exist.
+	 */
+	public static void build(Path file, int size, int games, int bookPlies, long moveMillis, int randomPlies, long seed)
+			throws IOException {
+		HashMap<EntryKey, long[]> entries = new HashMap<EntryKey, long[]>();
+		if (Files.exists(file)) {
+			for (long[] e : readEntries(file, size))
+				entries.put(new EntryKey(e[0], e[1], (int) e[2]), e);
+		}
+
+		Random random = new Random(seed);
+		for (int g = 0; g < games; g++) {
+			playGame(size, bookPlies, moveMillis, randomPlies, random, entries);
+			System.err.println("Game " + (g + 1) + "/" + games + ", " + entries.size() + " book entries");
+		}
+		OpeningBook.write(file, size, new ArrayList<long[]>(entries.values()));
+	}
+
+	/**
+	 * Reads all entries of the book in the file as arrays {black, white, player << 8 | move, games, points}.
+	 * The file is read with a plain stream rather than mapped like OpeningBook does: on Windows a mapped
+	 * file cannot be replaced until the mapping is garbage collected, so the book written afterwards could
+	 * not be moved over it.
+	 * @throws IOException if the file cannot be read or is not an opening book for the given size
+	 */
+	private static List<long[]> readEntries(Path file, int size) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != OpeningBook.MAGIC)
+				throw new IOException(file + " is not an opening book");
+			int bookSize = in.readInt();
+			if (bookSize != size)
+				throw new IOException(file + " is a book for size " + bookSize);
+			int count = in.readInt();
+			List<long[]> list = new ArrayList<long[]>(count);
+			for (int i = 0; i < count; i++)
+				list.add(new long[] { in.readLong(), in.readLong(), in.readInt(), in.readInt(), in.readInt() });
+			return list;
+		}
+	}
+
+	/**
+	 * Plays one self-play game and adds its first moves to the entries.
+	 */
+	private static void playGame(int size, int bookPlies, long moveMillis, int randomPlies, Random random,
+			HashMap<EntryKey, long[]> entries) {
+		OthelloAI[] ai = new OthelloAI[] { new OthelloAI(16, TranspositionTable.ReplacementPolicy.TWO_TIER),
+				new OthelloAI(16, TranspositionTable.ReplacementPolicy.TWO_TIER) };
+		for (OthelloAI a : ai)
+			a.setOpeningBook(null);
+
+		GameState s = new GameState(size, 1);
+		List<long[]> played = new ArrayList<long[]>(); // canonical {black, white, player << 8 | move}
+		int ply = 0;
+		while (!s.isFinished()) {
+			ArrayList<Position> moves = s.legalMoves();
+			if (moves.isEmpty()) {
+				s.changePlayer();
+				continue;
+			}
+			int player = s.getPlayerInTurn();
+			Position move = ply < randomPlies ? moves.get(random.nextInt(moves.size()))
+					: ai[player - 1].decideMove(s, moveMillis);
+			if (ply < bookPlies) {
+				int symmetry = OpeningBook.canonicalSymmetry(s);
+				int square = OpeningBook.transformSquare(move.col * 8 + move.row, symmetry, size);
+				played.add(new long[] { OpeningBook.transform(s.getTokenBits(1), symmetry, size),
+						OpeningBook.transform(s.getTokenBits(2), symmetry, size), player << 8 | square });
+			}
+			s.insertToken(move);
+			ply++;
+		}
+
+		int[] tokens = s.countTokens();
+		for (long[] p : played) {
+			int player = (int) p[2] >>> 8;
+			int own = tokens[player - 1];
+			int opponent = tokens[2 - player];
+			int points = own > opponent ? 2 : own == opponent ? 1 : 0;
+			long[] e = entries.computeIfAbsent(new EntryKey(p[0], p[1], (int) p[2]),
+					k -> new long[] { p[0], p[1], p[2], 0, 0 });
+			e[3]++;
+			e[4] += points;
+		}
+	}
+
+	/**
+	 * Canonical state and move of a book entry, as a hash map key.
+	 */
+	private static final class EntryKey {
+		private final long black;
+		private final long white;
+		private final int playerMove;
+
+		EntryKey(long black, long white, int playerMove) {
+			this.black = black;
+			this.white = white;
+			this.playerMove = playerMove;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof EntryKey))
+				return false;
+			EntryKey k = (EntryKey) o;
+			return k.black == black && k.white == white && k.playerMove == playerMove;
+		}
+
+		@Override
+		public int hashCode() {
+			return Long.hashCode(black * 31 + white) * 31 + playerMove;
+		}
+	}
+}
@@ -1,5 +1,7 @@
 import javax.swing.*;
 
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.IOException;
 import java.lang.reflect.*;
 
@@ -12,9 +14,10 @@ import java.lang.reflect.*;
 public class Othello
 {
     public static String HUMAN_CMD = "human";
+    public static String AUTO_CMD = "auto";
 	
 	/**
-     * Valid arguments: ai1 ai2 size 
+     * Valid arguments: ai1 ai2 size auto
      * Standard values for size (length of square board) is 8
      */
     public static void main(String[] args)
@@ -22,6 +25,7 @@ public class Othello
         IOthelloAI ai1 = null;
         IOthelloAI ai2 = null;
         int size = 8;
+        boolean autoPlay = false;
         
         boolean err = args.length < 2;
         String errMsg = "You need to supply at least two arguments";
@@ -70,6 +74,14 @@ public class Othello
             		err = true;
             	}
             }
+
+            if(args.length >= 4) {
+            	autoPlay = args[3].equalsIgnoreCase(AUTO_CMD);
+            	if ( !autoPlay ){
+            		errMsg = "Unknown argument: " + args[3];
+            		err = true;
+            	}
+            }
         }
         
         if(err) {
@@ -78,13 +90,25 @@ public class Othello
         }
         
         try{
-        	OthelloGUI g = new OthelloGUI(ai1, ai2, size, ai1 == null);
+        	OthelloGUI g = new OthelloGUI(ai1, ai2, size, ai1 == null, autoPlay);
 
         	// Setup of the frame containing the game
         	JFrame f = new JFrame();
         	f.setSize((size+2)*100,(size+2)*100);
         	f.setTitle("Othello");
         	f.setDefaultCloseOperation (JFrame.EXIT_ON_CLOSE);
+        	f.addWindowListener(new WindowAdapter(){
+        		public void windowClosing(WindowEvent e){
+        			g.close(); // Stop an AI that is thinking
+        		}
+        	});
+        	JMenuBar menuBar = new JMenuBar();
+        	JMenu gameMenu = new JMenu("Game");
+        	JMenuItem newGame = new JMenuItem("New game");
+        	newGame.addActionListener(e -> g.newGame());
+        	gameMenu.add(newGame);
+        	menuBar.add(gameMenu);
+        	f.setJMenuBar(menuBar);
         	f.getContentPane().add(g);    
         	f.setVisible(true);
         }
@@ -106,10 +130,14 @@ public class Othello
         if(!errMsg.equals("")) {
             System.err.println(errMsg);
         }
-        System.err.println("Usage: java PlayOthello OthelloAI1 OthelloAI2 [size]");
+        System.err.println("Usage: java PlayOthello OthelloAI1 OthelloAI2 [size] [" + AUTO_CMD + "]");
         System.err.println("\tOthelloAI1\t - Either '" + HUMAN_CMD +"' indicating a human will be playing, or specify an OthelloAI class implementing IOthelloAI.");
         System.err.println("\tOthelloAI2\t - Must always specify an OthelloAI class implementing IOthelloAI.");
         System.err.println("\tsize\t\t - Must be an even integer greater or equal to 4. Defaults to 8.");
+        System.err.println("\t" + AUTO_CMD + "\t\t - The AIs move without waiting for a click.");
+        System.err.println("Java options (before Othello):");
+        System.err.println("\t-D" + OthelloAI.THREADS_PROPERTY + "=n\t - Number of search threads of each AI. Defaults to the number of processors.");
+        System.err.println("\t-D" + OthelloAI.PONDER_PROPERTY + "=true\t - OthelloAIs think ahead while the opponent is thinking.");
     }
 
     /**
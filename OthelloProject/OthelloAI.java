@@ -1,234 +1,830 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class OthelloAI implements IOthelloAI {
 
-	private final int DEPTH_LIMIT = 9;
-	private double[][] positionUtility;
+	private final int DEPTH_LIMIT = 9; // depth of minimaxSearch without a deadline
+	static final int TABLE_MEGABYTES = 64;
+	private static final long GAME_TIME_MILLIS = 60000; // default clock for all our moves in a game
+	private static final long MIN_MOVE_MILLIS = 10;
 	private int BOARD_SIZE;
 
-	private final double DANGER_UTILITY = 0;
-	private final double CORNER_UTILITY = 4;
-	private final double EDGE_UTILITY = 2;
-	private final double DEFAULT_UTILITY = 0;
-	private List<Long> measurements = new ArrayList();
+	// Search results shared between all nodes, searches and threads with the same state
+	private final TranspositionTable table;
+
+	// Kept from one search to the next in the same game: besides the table, the move ordering of each thread
+	// and the root of the last search. A root that cannot follow the last root (a square taken then is empty
+	// now) starts a new game, and everything learned in the old game is forgotten.
+	private MoveOrderer[] orderers;
+	private GameState lastRoot;
+
+	// Lazy SMP: the main search and threads - 1 helper searches run at the same time on their own copies of
+	// the state, and only share the transposition table. The helpers fill the table with results that the
+	// main search can use, and are stopped when the main search is done.
+	private int threads;
+	private ExecutorService helperPool;
+
+	// Settings of the no-arg constructor, which Othello and Tournament use to load the AI by class name, e.g.
+	// java -Dothello.threads=16 -Dothello.ponder=true Othello human OthelloAI 8
+	static final String THREADS_PROPERTY = "othello.threads";	// search threads, by default one per processor
+	static final String PONDER_PROPERTY = "othello.ponder";	// true to ponder (see setPondering), off by default
+
+	// Pondering: after decideMove has chosen our move, a background search on the state after the reply we
+	// expect (or, without a guess, on the opponent's state, which covers all replies) fills the table while
+	// the opponent thinks. If the opponent plays the expected reply, the result of the ponder search is used
+	// at once when it is at least as deep as our last search.
+	private boolean pondering;
+	private ExecutorService ponderThread;
+	private volatile Searcher ponderSearcher;	// volatile for stop()
+	private Future<Position> ponderResult;
+	private GameState ponderState;	// the state the ponder search is on
+	private int lastDepth;			// depth reached by the last search of decideMove
+
+	private boolean moveOrdering = true;
+	private boolean principalVariationSearch = true;
+	private boolean aspirationWindows = true;
+	private static final int INFINITY = Integer.MAX_VALUE; // scores are in -INFINITY..INFINITY
+	private static final int ASPIRATION_WINDOW = 16;
+	private static final int WIN_SCORE = 1 << 20; // added to the difference in tokens of a finished game
+
+	// With at most endgameEmpties empty squares left, decideMove solves the game to the end instead
+	private static final int ENDGAME_EMPTIES = 16;
+	private final EndgameSolver endgameSolver = new EndgameSolver();
+	private int endgameEmpties = ENDGAME_EMPTIES;
+	private EndgameSolver.Mode endgameMode = EndgameSolver.Mode.EXACT;
+
+	// Moves from the opening book are played without searching. By default the book is read from
+	// OPENING_BOOK_FILE in the working directory, if there is one (see OpeningBookBuilder)
+	private static final String OPENING_BOOK_FILE = "book.bin";
+	private OpeningBook openingBook;
+	private boolean openingBookLoaded;
+
+	// Counters of the last search, summed over all threads. A cutoff on the first move is the best case
+	private long nodes;
+	private long leafEvaluations;
+	private long cutoffs;
+	private long firstMoveCutoffs;
+	private long tableProbes;
+	private long tableHits;
+	private int searchDepth; // depth of the deepest iteration the main thread completed
+
+	// Told about every decided move, with the counters above (see SearchMonitor), and about every iteration
+	// the main search completes
+	private final List<SearchListener> listeners = new CopyOnWriteArrayList<SearchListener>();
+
+	// For stop(), which is called from another thread than decideMove: the searchers of the running search,
+	// and whether the current request for a move was stopped (until clearStop())
+	private volatile Searcher[] activeSearchers;
+	private volatile boolean stopRequested;
+
+	// Clock for the current game
+	private long gameTime = GAME_TIME_MILLIS;
+	private long timeUsed;
+	private int lastTokenCount;
+
+	/**
+	 * Makes an AI with the default table that searches on defaultThreads() threads, and ponders if the system
+	 * property PONDER_PROPERTY is true.
+	 */
+	public OthelloAI() {
+		this(TABLE_MEGABYTES, TranspositionTable.ReplacementPolicy.TWO_TIER, defaultThreads());
+		setPondering(Boolean.getBoolean(PONDER_PROPERTY));
+	}
 
-	public Position decideMove(GameState s) {
-		long start = System.currentTimeMillis();
-		Position result = minimaxSearch(s);
-		long finished = System.currentTimeMillis();
-		measurements.add(finished - start);
-		printMeasurements();
-		return result;
+	/**
+	 * @param tableMegabytes memory budget of the transposition table
+	 * @param policy replacement policy of the transposition table
+	 */
+	public OthelloAI(int tableMegabytes, TranspositionTable.ReplacementPolicy policy) {
+		this(tableMegabytes, policy, 1);
 	}
 
-	public void printMeasurements() {
-		System.out.println(measurements);
-		System.out.println("Average: " + measurements.stream().mapToLong(i -> i).average());
+	/**
+	 * @param tableMegabytes memory budget of the transposition table
+	 * @param policy replacement policy of the transposition table
+	 * @param threads number of threads searching in parallel
+	 */
+	public OthelloAI(int tableMegabytes, TranspositionTable.ReplacementPolicy policy, int threads) {
+		table = new TranspositionTable(tableMegabytes, policy);
+		setThreads(threads);
 	}
 
-	public Position minimaxSearch(GameState s) {
-		computePositionUtility(s);
-		UtilityMove result = maxValue(s, Integer.MIN_VALUE, Integer.MAX_VALUE, 0);
-		if (s.legalMoves().size() == 1)
-			return s.legalMoves().get(0);
-		return result.move;
-	}
-
-	private void compute8x8PositionUtility() {
-		positionUtility = new double[][] {
-				{ 4, -3, 2, 2, 2, 2, -3, 4 },
-				{ -3, -4, -1, -1, -1, -1, -4, -3 },
-				{ 2, -1, 1, 0, 0, 1, -1, 2 },
-				{ 2, -1, 0, 1, 1, 0, -1, 2 },
-				{ 2, -1, 0, 1, 1, 0, -1, 2 },
-				{ 2, -1, 1, 0, 0, 1, -1, 2 },
-				{ -3, -4, -1, -1, -1, -1, -4, -3 },
-				{ 4, -3, 2, 2, 2, 2, -3, 4 }
-		};
-	}
-
-	private void computePositionUtility(GameState s) {
-		BOARD_SIZE = s.getBoard().length;
+	/**
+	 * Returns the number of search threads of AIs made with the no-arg constructors (also of MCTSAI): the
+	 * system property THREADS_PROPERTY, or else the number of processors.
+	 */
+	static int defaultThreads() {
+		return Integer.getInteger(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors());
+	}
 
-		positionUtility = new double[BOARD_SIZE][BOARD_SIZE];
-		if (BOARD_SIZE == 8) {
-			compute8x8PositionUtility();
-			return;
+	/**
+	 * Sets the number of threads that search in parallel.
+	 */
+	public void setThreads(int threads) {
+		this.threads = Math.max(1, threads);
+		orderers = null;
+		if (helperPool != null)
+			helperPool.shutdown();
+		helperPool = null;
+		if (this.threads > 1) {
+			helperPool = Executors.newFixedThreadPool(this.threads - 1, r -> {
+				Thread t = new Thread(r, "OthelloAI helper");
+				t.setDaemon(true);
+				return t;
+			});
 		}
+	}
 
-		// Default
-		for (int i = 0; i < BOARD_SIZE; i++) {
-			for (int j = 0; j < BOARD_SIZE; j++) {
-				positionUtility[i][j] = DEFAULT_UTILITY;
-			}
+	/**
+	 * Turns pondering (searching in a background thread while the opponent thinks) on or off.
+	 */
+	public void setPondering(boolean pondering) {
+		stopPondering();
+		this.pondering = pondering;
+		if (pondering && ponderThread == null) {
+			ponderThread = Executors.newSingleThreadExecutor(r -> {
+				Thread t = new Thread(r, "OthelloAI ponder");
+				t.setDaemon(true);
+				return t;
+			});
 		}
+		else if (!pondering && ponderThread != null) {
+			ponderThread.shutdown();
+			ponderThread = null;
+		}
+	}
+
+	/**
+	 * Sets the total time (in milliseconds) we may spend on all our moves in a game. decideMove(GameState)
+	 * splits what is left of it over our remaining moves.
+	 */
+	public void setGameTime(long millis) {
+		gameTime = millis;
+	}
+
+	/**
+	 * Turns the ordering of moves by hash move, killer moves, history and square class on or off.
+	 */
+	public void setMoveOrdering(boolean moveOrdering) {
+		this.moveOrdering = moveOrdering;
+	}
+
+	/**
+	 * Turns principal variation search (null-window scouting of all but the first move) and aspiration
+	 * windows on or off. With both off, every node is searched with the full window.
+	 */
+	public void setPrincipalVariationSearch(boolean principalVariationSearch, boolean aspirationWindows) {
+		this.principalVariationSearch = principalVariationSearch;
+		this.aspirationWindows = aspirationWindows;
+	}
+
+	/**
+	 * Sets the number of empty squares at which decideMove switches from the heuristic search to solving the
+	 * game exactly, and whether it solves for the exact result or only for win/loss/draw. 0 turns it off.
+	 */
+	public void setEndgame(int empties, EndgameSolver.Mode mode) {
+		endgameEmpties = empties;
+		endgameMode = mode;
+	}
 
-		// Edges
-		for (int i = 0; i < BOARD_SIZE; i++) {
-			positionUtility[0][i] = EDGE_UTILITY;
-			positionUtility[BOARD_SIZE - 1][i] = EDGE_UTILITY;
-			positionUtility[i][BOARD_SIZE - 1] = EDGE_UTILITY;
-			positionUtility[i][0] = EDGE_UTILITY;
+	/**
+	 * Sets the opening book to play from, instead of the one in OPENING_BOOK_FILE; null turns the book off.
+	 */
+	public void setOpeningBook(OpeningBook book) {
+		openingBook = book;
+		openingBookLoaded = true;
+	}
+
+	/**
+	 * Returns the opening book, reading OPENING_BOOK_FILE the first time if no book was set.
+	 */
+	private OpeningBook getOpeningBook() {
+		if (!openingBookLoaded) {
+			openingBookLoaded = true;
+			Path file = Paths.get(OPENING_BOOK_FILE);
+			if (Files.exists(file)) {
+				try {
+					openingBook = new OpeningBook(file);
+				} catch (IOException e) {
+					System.err.println("Opening book not used: " + e.getMessage());
+				}
+			}
 		}
+		return openingBook;
+	}
+
+	public void addSearchListener(SearchListener listener) {
+		listeners.add(listener);
+	}
 
-		// Corners (override corners after edges)
-		positionUtility[0][0] = CORNER_UTILITY;
-		positionUtility[BOARD_SIZE - 1][0] = CORNER_UTILITY;
-		positionUtility[0][BOARD_SIZE - 1] = CORNER_UTILITY;
-		positionUtility[BOARD_SIZE - 1][BOARD_SIZE - 1] = CORNER_UTILITY;
+	public void removeSearchListener(SearchListener listener) {
+		listeners.remove(listener);
+	}
 
-		// Danger zone
-		for (int i = 1; i < BOARD_SIZE - 1; i++) {
-			positionUtility[1][i] = DANGER_UTILITY;
-			positionUtility[BOARD_SIZE - 2][i] = DANGER_UTILITY;
-			positionUtility[i][BOARD_SIZE - 2] = DANGER_UTILITY;
-			positionUtility[i][1] = DANGER_UTILITY;
+	/**
+	 * Makes a decideMove that is running on another thread return as soon as possible with the best move
+	 * found so far, e.g. when the game it is deciding for was abandoned. The ponder search is stopped too.
+	 * A decideMove that has not started yet returns at once as well: the stop holds until clearStop().
+	 */
+	public void stop() {
+		stopRequested = true;
+		endgameSolver.stop();
+		Searcher[] searchers = activeSearchers;
+		if (searchers != null) {
+			for (Searcher searcher : searchers)
+				searcher.stop();
 		}
+		Searcher ponder = ponderSearcher;
+		if (ponder != null)
+			ponder.stop();
+	}
+
+	/**
+	 * Lets decideMove search again after stop(). Call it when a new move is requested, before decideMove is
+	 * called on the thread that searches, so that a stop() in between is not lost.
+	 */
+	public void clearStop() {
+		stopRequested = false;
+		endgameSolver.clearStop();
+	}
 
-		// Fields around top left corner
-		positionUtility[0][1] = -CORNER_UTILITY;
-		positionUtility[1][0] = -CORNER_UTILITY;
-		positionUtility[1][1] = -CORNER_UTILITY;
+	/**
+	 * Returns the number of nodes visited by the last search.
+	 */
+	public long getNodeCount() {
+		return nodes;
+	}
+
+	/**
+	 * Returns the number of beta cutoffs in the last search.
+	 */
+	public long getCutoffCount() {
+		return cutoffs;
+	}
 
-		// Fields around top right corner
-		positionUtility[0][BOARD_SIZE - 2] = -CORNER_UTILITY;
-		positionUtility[1][BOARD_SIZE - 2] = -CORNER_UTILITY;
-		positionUtility[1][BOARD_SIZE - 1] = -CORNER_UTILITY;
+	/**
+	 * Returns the number of beta cutoffs in the last search that happened on the first move tried.
+	 */
+	public long getFirstMoveCutoffCount() {
+		return firstMoveCutoffs;
+	}
 
-		// Fields around bottom left corner
-		positionUtility[BOARD_SIZE - 2][0] = -CORNER_UTILITY;
-		positionUtility[BOARD_SIZE - 1][1] = -CORNER_UTILITY;
-		positionUtility[BOARD_SIZE - 2][1] = -CORNER_UTILITY;
+	public Position decideMove(GameState s) {
+		return decideMove(s, allotTime(s));
+	}
 
-		// Fields around bottom right corner
-		positionUtility[BOARD_SIZE - 2][BOARD_SIZE - 1] = -CORNER_UTILITY;
-		positionUtility[BOARD_SIZE - 2][BOARD_SIZE - 2] = -CORNER_UTILITY;
-		positionUtility[BOARD_SIZE - 1][BOARD_SIZE - 2] = -CORNER_UTILITY;
+	/**
+	 * Searches deeper and deeper until the given time (in milliseconds) is used, and returns the best move of
+	 * the deepest search that was completed. Near the end of the game the game is solved exactly instead; if
+	 * that does not finish within three quarters of the time, the rest is used for the normal search.
+	 * States in the opening book are not searched at all, and neither are states that were pondered deep
+	 * enough (see setPondering).
+	 */
+	public Position decideMove(GameState s, long timeMillis) {
+		long start = System.currentTimeMillis();
+		long deadline = System.nanoTime() + timeMillis * 1000000;
+		Position pondered = stopPondering(s);
+		int[] tokens = s.countTokens();
+		int empties = s.getBoard().length * s.getBoard().length - tokens[0] - tokens[1];
+		Position result = null;
+		SearchStatistics.Source source = SearchStatistics.Source.BOOK;
+		OpeningBook book = getOpeningBook();
+		if (book != null) {
+			result = book.lookup(s);
+			if (result != null && !s.legalMoves().contains(result))
+				result = null;
+		}
+		if (result == null && empties <= endgameEmpties && !stopRequested) {
+			source = SearchStatistics.Source.ENDGAME;
+			result = endgameSolver.solve(s, endgameMode, deadline - timeMillis * 1000000 / 4);
+		}
+		if (result == null && pondered != null) {
+			source = SearchStatistics.Source.PONDER;
+			result = pondered;
+		}
+		if (result == null) {
+			source = SearchStatistics.Source.SEARCH;
+			result = minimaxSearch(s, deadline, empties);
+			if (searchDepth > 0)
+				lastDepth = searchDepth;
+		}
+		long finished = System.currentTimeMillis();
+		timeUsed += finished - start;
+		if (!listeners.isEmpty())
+			notifyListeners(source, result, finished - start, empties);
+		if (pondering && result != null)
+			startPondering(s, result);
+		return result;
 	}
 
-	private UtilityMove maxValue(GameState s, double alpha, double beta, int depth) {
-		// Max wants to get as high utility for the player as possible
-		if (isCutOff(s, depth)) {
-			// stop search as we have reached cut off
-			return new UtilityMove(s, null);
+	/**
+	 * Starts the ponder search for the state after we play our move in s.
+	 */
+	private void startPondering(GameState s, Position move) {
+		GameState next = new GameState(s.getBoard(), s.getPlayerInTurn());
+		next.insertToken(move);
+		if (next.isFinished())
+			return;
+		// set before the table is read: the move may come from the book or the endgame solver, which do
+		// not set it, so it could still be that of another board size, or 0
+		BOARD_SIZE = next.getBoard().length;
+		ArrayList<Position> replies = next.legalMoves();
+		if (replies.isEmpty()) {
+			next.changePlayer(); // the opponent has to pass, so we know our next state
 		}
+		else {
+			// the reply our search expects is the best move stored for the state after our move
+			long entry = table.probe(next.getHashKey());
+			int square = entry == 0 ? -1 : TranspositionTable.move(entry);
+			Position reply = square < 0 ? null : new Position(square / BOARD_SIZE, square % BOARD_SIZE);
+			if (reply != null && replies.contains(reply))
+				next.insertToken(reply);
+		}
+		ponderState = next;
+		table.newSearch();
+		// the opponent's move takes at most its whole game clock; if no decideMove comes by then, the game
+		// was abandoned and the ponder search ends by itself
+		long deadline = System.nanoTime() + gameTime * 1000000;
+		Searcher searcher = new Searcher(next, 0, deadline, new MoveOrderer(BOARD_SIZE));
+		int empties = 0;
+		for (int[] column : next.getBoard()) {
+			for (int token : column)
+				empties += token == 0 ? 1 : 0;
+		}
+		int maxDepth = empties;
+		ponderSearcher = searcher;
+		if (stopRequested)
+			searcher.stop();
+		ponderResult = ponderThread.submit(() -> searcher.iterate(maxDepth, null));
+	}
 
-		double bestUtility = Integer.MIN_VALUE;
-		Position bestMove = null;
-		for (Position a : s.legalMoves()) {
-			// find move that results in highest utility
-			GameState newState = result(s, a);
-			UtilityMove m = minValue(newState, alpha, beta, depth + 1);
+	/**
+	 * Stops the ponder search, if one is running.
+	 */
+	private void stopPondering() {
+		stopPondering(null);
+	}
 
-			if (m.utility > bestUtility) {
-				bestUtility = m.utility; // override best utility
-				bestMove = a; // override best move
-				alpha = Math.max(alpha, bestUtility);
-			}
-			if (bestUtility >= beta)
-				return new UtilityMove(bestUtility, bestMove);
+	/**
+	 * Stops the ponder search, if one is running, and returns its best move if it was on the state s and
+	 * searched at least as deep as the last search of decideMove; otherwise null.
+	 */
+	private Position stopPondering(GameState s) {
+		if (ponderResult == null)
+			return null;
+		Searcher searcher = ponderSearcher;
+		searcher.stop();
+		Position best = join(ponderResult);
+		boolean hit = s != null && s.getHashKey() == ponderState.getHashKey()
+				&& s.getPlayerInTurn() == ponderState.getPlayerInTurn()
+				&& Arrays.deepEquals(s.getBoard(), ponderState.getBoard());
+		int depth = searcher.completedDepth;
+		ponderResult = null;
+		ponderSearcher = null;
+		ponderState = null;
+		if (hit && depth >= lastDepth && best != null && s.legalMoves().contains(best)) {
+			collectCounters(searcher);
+			searchDepth = depth;
+			lastDepth = depth;
+			return best;
 		}
+		return null;
+	}
 
-		// return best utility and move
-		return new UtilityMove(bestUtility, bestMove);
+	/**
+	 * Returns the time for the next move: what is left of the game clock split evenly over the moves we have left.
+	 */
+	private long allotTime(GameState s) {
+		int[] tokens = s.countTokens();
+		int tokenCount = tokens[0] + tokens[1];
+		if (tokenCount <= lastTokenCount) {
+			// fewer tokens than last time, so this is a new game
+			timeUsed = 0;
+		}
+		lastTokenCount = tokenCount;
+		int empties = s.getBoard().length * s.getBoard().length - tokenCount;
+		int movesLeft = Math.max(1, (empties + 1) / 2);
+		long timeLeft = Math.max(0, gameTime - timeUsed);
+		return Math.max(MIN_MOVE_MILLIS, timeLeft / movesLeft);
 	}
 
-	private UtilityMove minValue(GameState s, double alpha, double beta, int depth) {
-		// Min wants to get as low utility for the player (Max) as possible
-		// Low score for Max means higher probability for Min to win
-		if (isCutOff(s, depth)) {
-			// stop search as we have reached cut off
-			return new UtilityMove(s, null);
+	/**
+	 * Tells the listeners how the move was decided.
+	 */
+	private void notifyListeners(SearchStatistics.Source source, Position move, long millis, int empties) {
+		SearchStatistics statistics;
+		switch (source) {
+			case BOOK:
+				statistics = new SearchStatistics(source, move, millis, 0, 0, 0, 0, 0, 0, 0);
+				break;
+			case ENDGAME:
+				statistics = new SearchStatistics(source, move, millis, empties, endgameSolver.getNodeCount(), 0, 0, 0, 0, 0);
+				break;
+			default:
+				statistics = new SearchStatistics(source, move, millis, searchDepth, nodes, leafEvaluations, cutoffs,
+						firstMoveCutoffs, tableProbes, tableHits);
 		}
+		for (SearchListener listener : listeners)
+			listener.searchFinished(statistics);
+	}
 
-		double bestUtility = Integer.MAX_VALUE;
-		Position bestMove = null;
-		for (Position a : s.legalMoves()) {
-			// find move that results in lowest utility
+	/**
+	 * Searches to the fixed depth DEPTH_LIMIT, without a deadline.
+	 */
+	public Position minimaxSearch(GameState s) {
+		return minimaxSearch(s, DEPTH_LIMIT);
+	}
 
-			GameState newState = result(s, a);
-			UtilityMove m = maxValue(newState, alpha, beta, depth + 1);
+	/**
+	 * Searches to the given fixed depth, without a deadline.
+	 */
+	public Position minimaxSearch(GameState s, int depth) {
+		return minimaxSearch(s, Long.MAX_VALUE, depth);
+	}
 
-			if (m.utility < bestUtility) {
-				bestUtility = m.utility; // override best utility
-				bestMove = a; // override best move
-				beta = Math.min(beta, bestUtility);
-			}
-			if (bestUtility <= alpha)
-				return new UtilityMove(bestUtility, bestMove);
+	/**
+	 * Iterative deepening: searches to depth 1, 2, ... maxDepth until the deadline (a System.nanoTime() value)
+	 * is reached, and returns the best move of the deepest search that was completed.
+	 */
+	private Position minimaxSearch(GameState s, long deadline, int maxDepth) {
+		stopPondering();
+		ArrayList<Position> moves = s.legalMoves();
+		if (moves.size() == 1) {
+			collectCounters();
+			searchDepth = 0;
+			return moves.get(0);
 		}
-		// return best utility and move
-		return new UtilityMove(bestUtility, bestMove);
-	}
+		BOARD_SIZE = s.getBoard().length;
+		reuseSearchState(s);
+		table.newSearch();
+
+		// start the helpers, each on a private copy of the state
+		Searcher[] searchers = new Searcher[threads];
+		List<Future<?>> helpers = new ArrayList<Future<?>>();
+		for (int i = 0; i < threads; i++)
+			searchers[i] = new Searcher(s, i, deadline, orderers[i]);
+		activeSearchers = searchers;
+		if (stopRequested)
+			stop();
+		for (int i = 1; i < threads; i++) {
+			Searcher helper = searchers[i];
+			helpers.add(helperPool.submit(() -> helper.iterate(maxDepth, null)));
+		}
+
+		Position bestMove = searchers[0].iterate(maxDepth, moves.isEmpty() ? null : moves.get(0));
 
-	private boolean isCutOff(GameState s, int depth) {
-		// use depth limit to terminate search
-		return (isTerminal(s) || depth >= DEPTH_LIMIT);
+		for (int i = 1; i < threads; i++)
+			searchers[i].stop();
+		for (Future<?> helper : helpers)
+			join(helper);
+		activeSearchers = null;
+		collectCounters(searchers);
+		searchDepth = searchers[0].completedDepth;
+		return bestMove;
 	}
 
-	private boolean isTerminal(GameState s) {
-		// determine whether given state is final state
-		return s.isFinished();
+	/**
+	 * Waits for a search on another thread that was stopped, and returns its result. An interrupt does not
+	 * end the wait, as the search ends soon anyway, so a search is never left running on the state of the
+	 * next one; the thread stays interrupted.
+	 */
+	private static <T> T join(Future<T> search) {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return search.get();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					throw new RuntimeException(e.getCause());
+				}
+			}
+		} finally {
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
 	}
 
-	private GameState result(GameState s, Position a) {
-		// return state that results from applying action `a` in state `s`
-		GameState newState = new GameState(s.getBoard(), s.getPlayerInTurn());
-		// make copy of game state, and simulate move in the new state
-		newState.insertToken(a);
-		return newState;
+	/**
+	 * Sets the counters of the last search to the sums over the given searchers.
+	 */
+	private void collectCounters(Searcher... searchers) {
+		nodes = 0;
+		leafEvaluations = 0;
+		cutoffs = 0;
+		firstMoveCutoffs = 0;
+		tableProbes = 0;
+		tableHits = 0;
+		for (Searcher searcher : searchers) {
+			nodes += searcher.nodes;
+			leafEvaluations += searcher.leafEvaluations;
+			cutoffs += searcher.cutoffs;
+			firstMoveCutoffs += searcher.firstMoveCutoffs;
+			tableProbes += searcher.tableProbes;
+			tableHits += searcher.tableHits;
+		}
 	}
 
-	class UtilityMove {
-		public final double utility;
-		public final Position move;
+	/**
+	 * Prepares the search state kept between searches for a search from s: if s follows the root of the last
+	 * search, the killer moves are moved to the new plies, otherwise the table and move ordering are cleared.
+	 */
+	private void reuseSearchState(GameState s) {
+		if (orderers == null || orderers.length != threads || orderers[0].getSize() != BOARD_SIZE) {
+			orderers = new MoveOrderer[threads];
+			for (int i = 0; i < threads; i++)
+				orderers[i] = new MoveOrderer(BOARD_SIZE);
+		}
+		// passes are not seen on the board, so the plies may be off by them, which only costs some killers
+		int plies = lastRoot == null || lastRoot.getBoard().length != BOARD_SIZE ? -1 : movesAfter(lastRoot, s);
+		if (plies < 0) {
+			table.clear();
+			for (MoveOrderer orderer : orderers)
+				orderer.clear();
+		}
+		else if (plies > 0) {
+			for (MoveOrderer orderer : orderers)
+				orderer.advance(plies);
+		}
+		lastRoot = new GameState(s.getBoard(), s.getPlayerInTurn());
+	}
 
-		public UtilityMove(double utility, Position move) {
-			this.utility = utility;
-			this.move = move;
+	/**
+	 * Returns the number of moves played from the state from to the state to, or -1 if to cannot follow from
+	 * in a game, i.e. if a square taken in from is empty in to.
+	 */
+	private static int movesAfter(GameState from, GameState to) {
+		int[][] before = from.getBoard();
+		int[][] after = to.getBoard();
+		int moves = 0;
+		for (int col = 0; col < before.length; col++) {
+			for (int row = 0; row < before.length; row++) {
+				if (before[col][row] != 0 && after[col][row] == 0)
+					return -1;
+				if (before[col][row] == 0 && after[col][row] != 0)
+					moves++;
+			}
 		}
+		return moves;
+	}
 
-		public UtilityMove(GameState state, Position move) {
-			this.utility = utility(state);
-			this.move = move;
+	/**
+	 * The search of one thread, with its own copy of the state, move ordering and counters.
+	 *
+	 * It is a negamax form of alpha-beta with integer scores: every node returns its score from the point of
+	 * view of its own player. At the depth limit that is the value of the PatternEvaluator, which is updated
+	 * along with every move; a finished game is worth WIN_SCORE plus the difference in tokens.
+	 * Principal variation search: only the first (best ordered) move of a node is searched with the full
+	 * window; the others are scouted with a null window (alpha, alpha + 1), which only proves that they are
+	 * no better, and are searched again with the full window if they turn out to be better.
+	 * Aspiration windows: each iteration starts with a narrow window around the score of the previous one,
+	 * and is repeated with an open window on the side where the score falls outside.
+	 */
+	class Searcher {
+		private final GameState state;	// updated in place by makeMove/undoMove
+		private final int id;			// 0 for the main search, 1.. for the helpers
+		private final long deadline;	// System.nanoTime() value
+		private final MoveOrderer orderer;
+		private final PatternEvaluator evaluator;
+		private final int[][] moves;	// move list per ply, as col*size+row
+		private int empties;			// empty squares of the state
+		private int depthLimit;			// depth of the current iteration
+		private boolean aborted;		// the current iteration was stopped by the deadline or by stop()
+		private volatile boolean stopped;
+		private int completedDepth;		// depth of the deepest iteration that was completed
+		private Position rootMove;		// best move found at the root in the current iteration
+		private long nodes;
+		private long leafEvaluations;
+		private long cutoffs;
+		private long firstMoveCutoffs;
+		private long tableProbes;
+		private long tableHits;
+
+		Searcher(GameState s, int id, long deadline, MoveOrderer orderer) {
+			this.state = new GameState(s.getBoard(), s.getPlayerInTurn());
+			this.id = id;
+			this.deadline = deadline;
+			this.orderer = orderer;
+			this.evaluator = new PatternEvaluator(BOARD_SIZE);
+			evaluator.reset(state);
+			this.moves = new int[BOARD_SIZE * BOARD_SIZE + 1][BOARD_SIZE * BOARD_SIZE];
+			int[] tokens = state.countTokens();
+			this.empties = BOARD_SIZE * BOARD_SIZE - tokens[0] - tokens[1];
 		}
 
 		/**
-		 * determine outcome of game state
+		 * Iterative deepening up to maxDepth, until the deadline or until stop() is called. Helpers with an
+		 * odd id start one ply deeper, so that the threads do not all search the same depth at the same time.
+		 * @param bestMove the move to return if not even the first iteration is completed
+		 * @return the best move of the deepest iteration that was completed
 		 */
-		private double utility(GameState state) {
-			double accUtility = 0.0;
-			for (int i = 0; i < BOARD_SIZE; i++) {
-				for (int j = 0; j < BOARD_SIZE; j++) {
-					// for each position, count up the utility if the token is placed by the current
-					// player
-					if (state.getBoard()[i][j] == state.getPlayerInTurn()) {
-						// get utility from our utility array
-						accUtility += positionUtility[i][j];
-					}
+		Position iterate(int maxDepth, Position bestMove) {
+			long start = System.nanoTime();
+			int firstDepth = 1 + id % 2;
+			int score = 0;
+			for (depthLimit = firstDepth; depthLimit <= maxDepth; depthLimit++) {
+				int alpha = -INFINITY;
+				int beta = INFINITY;
+				if (aspirationWindows && depthLimit > firstDepth) {
+					alpha = Math.max(-INFINITY, score - ASPIRATION_WINDOW);
+					beta = Math.min(INFINITY, score + ASPIRATION_WINDOW);
+				}
+				while (true) {
+					rootMove = null;
+					score = search(state, alpha, beta, 0);
+					if (aborted)
+						break;
+					// outside the window the score is only a bound, so search again with that side open
+					if (score <= alpha && alpha > -INFINITY)
+						alpha = -INFINITY;
+					else if (score >= beta && beta < INFINITY)
+						beta = INFINITY;
+					else
+						break;
+				}
+				if (aborted)
+					break; // the last iteration was not completed
+				if (rootMove != null)
+					bestMove = rootMove;
+				completedDepth = depthLimit;
+				if (id == 0 && this != ponderSearcher) {
+					for (SearchListener listener : listeners)
+						listener.iterationCompleted(depthLimit, bestMove);
 				}
+				// the next iteration takes several times longer than this one, so the main search does
+				// not start it if more than half of the time is gone
+				long now = System.nanoTime();
+				if (id == 0 && this != ponderSearcher && deadline != Long.MAX_VALUE && now - start > (deadline - start) / 2)
+					break;
 			}
-			int[] tokenCount = state.countTokens();
-			if (tokenCount[0] == tokenCount[1]) {
-				// equal amount of pieces - good for both
+			return bestMove;
+		}
+
+		/**
+		 * Returns the score of the state for the player in turn. Fail-soft: if the score is at most alpha or at
+		 * least beta, the returned value is only a bound, but it may lie outside the window.
+		 */
+		private int search(GameState s, int alpha, int beta, int depth) {
+			checkClock();
+			if (aborted)
 				return 0;
+			if (depth >= depthLimit) {
+				// stop search as we have reached cut off
+				leafEvaluations++;
+				return isTerminal(s, false) ? finalScore(s) : evaluator.evaluate(s.getPlayerInTurn());
+			}
+			long entry = table.probe(s.getHashKey());
+			tableProbes++;
+			if (entry != 0)
+				tableHits++;
+			if (depth > 0 && entry != 0 && TranspositionTable.depth(entry) >= depthLimit - depth) {
+				int stored = TranspositionTable.score(entry);
+				int bound = TranspositionTable.bound(entry);
+				if (bound == TranspositionTable.EXACT
+						|| (bound == TranspositionTable.LOWER_BOUND && stored >= beta)
+						|| (bound == TranspositionTable.UPPER_BOUND && stored <= alpha))
+					return stored;
+			}
+			int alphaOrig = alpha;
+
+			// the moves are generated once per node; without any, only the opponent's are left to check
+			int[] moves = this.moves[depth];
+			int count = orderedMoves(s, entry, depth);
+			if (count == 0) {
+				if (isTerminal(s, true)) {
+					leafEvaluations++;
+					return finalScore(s);
+				}
+				// the player in turn has to pass
+				s.changePlayer();
+				int score = -search(s, -beta, -alpha, depth + 1);
+				s.changePlayer();
+				return score;
 			}
-			if (state.getPlayerInTurn() == 1) {
-				// if it's our turn (AI)
-				if (tokenCount[0] > tokenCount[1])
-					// reward having fewer pieces
-					return 10000;
-				else
-					// we have most pieces - return calculated utility
-					return accUtility;
-			} else {
-				// if it's not our turn
-				if (tokenCount[0] > tokenCount[1])
-					return accUtility;
-				else
-					return 10000;
+			int bestScore = -INFINITY;
+			int bestMove = -1;
+			int tried = 0;
+			for (int i = 0; i < count; i++) {
+				int a = moves[i];
+				s.makeMove(a);
+				empties--;
+				evaluator.apply(s);
+				int score;
+				if (tried == 0 || !principalVariationSearch) {
+					score = -search(s, -beta, -alpha, depth + 1);
+				} else {
+					score = -search(s, -alpha - 1, -alpha, depth + 1);
+					if (score > alpha && score < beta && !aborted)
+						score = -search(s, -beta, -alpha, depth + 1);
+				}
+				evaluator.revert(s);
+				s.undoMove();
+				empties++;
+				if (aborted)
+					return 0;
+
+				if (score > bestScore) {
+					bestScore = score;
+					bestMove = a;
+					if (depth == 0)
+						rootMove = new Position(a / BOARD_SIZE, a % BOARD_SIZE);
+					alpha = Math.max(alpha, score);
+				}
+				if (alpha >= beta) {
+					recordCutoff(a, depth, tried);
+					break;
+				}
+				tried++;
 			}
+			storeTable(s, alphaOrig, beta, depth, bestScore, bestMove);
+			return bestScore;
+		}
+
+		/**
+		 * Puts the legal moves of the state into the move list of the ply, in the order they should be
+		 * searched, and returns how many there are.
+		 * @param entry the transposition table data of the state, or 0
+		 */
+		private int orderedMoves(GameState s, long entry, int depth) {
+			int count = s.legalMoves(moves[depth]);
+			if (moveOrdering)
+				orderer.order(moves[depth], count, entry == 0 ? -1 : TranspositionTable.move(entry), depth);
+			return count;
+		}
+
+		/**
+		 * Counts a cutoff caused by the given move after the given number of other moves were tried,
+		 * and lets the move ordering learn from it.
+		 */
+		private void recordCutoff(int move, int depth, int tried) {
+			cutoffs++;
+			if (tried == 0)
+				firstMoveCutoffs++;
+			if (moveOrdering)
+				orderer.cutoff(move, depth, depthLimit - depth);
+		}
+
+		/**
+		 * Stores the result of searching the state with the window (alpha, beta).
+		 * @param move the best move as col*size+row, or -1 if there is none
+		 */
+		private void storeTable(GameState s, int alpha, int beta, int depth, int score, int move) {
+			int bound = TranspositionTable.EXACT;
+			if (score >= beta)
+				bound = TranspositionTable.LOWER_BOUND;
+			else if (score <= alpha)
+				bound = TranspositionTable.UPPER_BOUND;
+			table.store(s.getHashKey(), depthLimit - depth, bound, score, move);
+		}
+
+		/**
+		 * Counts a node, and now and then checks the clock (and whether stop() was called) and stops
+		 * the whole search when the time is up.
+		 */
+		private void checkClock() {
+			if ((++nodes & 1023) == 0 && (System.nanoTime() > deadline || stopped))
+				aborted = true;
+		}
+
+		/**
+		 * Makes the search stop as soon as it checks the clock.
+		 */
+		void stop() {
+			stopped = true;
+		}
+
+		/**
+		 * Returns the score of a finished game for the player in turn: a win or loss by more tokens is better
+		 * or worse than one by fewer, and any win is better than any heuristic value.
+		 */
+		private int finalScore(GameState s) {
+			int player = s.getPlayerInTurn();
+			int[] tokens = s.countTokens();
+			int difference = tokens[player - 1] - tokens[2 - player];
+			return Integer.signum(difference) * WIN_SCORE + difference;
+		}
+
+		/**
+		 * Returns true if the game is over. With noMoves (the player in turn has no legal moves) only the
+		 * opponent is checked. Without it, at the leaves, generating the moves of both players would cost a
+		 * scan of the board on boards without bitboards, so only a full board counts there; a game that ends
+		 * earlier is found one ply deeper, where the player in turn has no moves.
+		 */
+		private boolean isTerminal(GameState s, boolean noMoves) {
+			if (noMoves)
+				return !s.opponentHasLegalMove();
+			return empties == 0 || (s.hasBitboards() && s.isFinished());
 		}
 	}
 
@@ -4,12 +4,20 @@ import java.awt.*;
 import java.awt.event.*;
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * GUI to show the Othello game and to listen for input for the user/human player. When it is the user's turn, 
  * (s)he clicks on the place where (s)he wants to place a token, and when it is the computer's turn, the 
- * player needs to click anywhere in the frame to make the computer take it's turn. The user is made aware
+ * player needs to click anywhere in the frame to make the computer take it's turn (or, with auto-play, the
+ * computer moves by itself). The user is made aware
  * of any illegal moves, or when (s)he - or the computer - have to pass because no legal moves are possible.  
+ * 
+ * The AIs decide their moves on a background thread, on a copy of the state, so the window stays responsive
+ * while they think; meanwhile the best move found so far is shown if the AI is an OthelloAI. A move being
+ * decided is cancelled when a new game is started or the window is closed.
  * @author Mai Ajspur
  * @version 9.2.2018
  */
@@ -23,6 +31,17 @@ public class OthelloGUI extends JComponent implements MouseListener
     private boolean humanPlayer;	// Whether a human player is playing or not
     private IOthelloAI ai1;			// The AI for player 1 if there are no human player
     private IOthelloAI ai2;			// The AI for player 2 
+    private boolean autoPlay;		// Whether the AIs move without waiting for a click
+
+    // Deciding the AI moves in the background. Every AI move and every new game gets a new turn number, so
+    // the result of a cancelled move (which may still arrive) is ignored.
+    private final ExecutorService aiThread;
+    private Future<?> aiMove;				// The AI move being decided, or null
+    private IOthelloAI thinkingAI;			// The AI deciding it
+    private int turn;
+    private volatile int decidingTurn;		// The turn the AI thread is deciding
+    private int thinkingDepth;				// Progress of the AI move being decided: the depth searched
+    private Position thinkingMove;			// and the best move so far, or null
 
     // Images for drawing the game board
     private Image 		part, blackPion, whitePion, background;
@@ -39,6 +58,14 @@ public class OthelloGUI extends JComponent implements MouseListener
      * @param humanPlayer true if there is a (one) human player
      */
     public OthelloGUI(IOthelloAI ai1, IOthelloAI ai2, int size, boolean humanPlayer) throws IOException{
+    	this(ai1, ai2, size, humanPlayer, false);
+    }
+
+    /**
+     * Initializes game
+     * @param autoPlay true if the AIs should make their moves without waiting for a click
+     */
+    public OthelloGUI(IOthelloAI ai1, IOthelloAI ai2, int size, boolean humanPlayer, boolean autoPlay) throws IOException{
    		part = ImageIO.read(new File("imgs/maze.png"));
     	blackPion = ImageIO.read(new File("imgs/blackPion.png"));
     	whitePion = ImageIO.read(new File("imgs/whitePion.png"));
@@ -61,7 +88,59 @@ public class OthelloGUI extends JComponent implements MouseListener
     	if ( !humanPlayer )
     		this.ai1 = ai1;
     	this.ai2=ai2;
+    	this.autoPlay = autoPlay;
     	this.addMouseListener(this);
+
+    	this.aiThread = Executors.newSingleThreadExecutor(r -> {
+    		Thread t = new Thread(r, "OthelloGUI AI");
+    		t.setDaemon(true);
+    		return t;
+    	});
+    	SearchListener progress = new SearchListener() {
+    		public void searchFinished(SearchStatistics statistics){}
+
+    		public void iterationCompleted(int depth, Position bestMove){
+    			int turn = decidingTurn;
+    			SwingUtilities.invokeLater(() -> showProgress(turn, depth, bestMove));
+    		}
+    	};
+    	if ( this.ai1 instanceof OthelloAI )
+    		((OthelloAI) this.ai1).addSearchListener(progress);
+    	if ( ai2 instanceof OthelloAI && ai2 != this.ai1 )
+    		((OthelloAI) ai2).addSearchListener(progress);
+    	if ( autoPlay && !isHumanTurn() )
+    		startAiMove();
+    }
+
+    /**
+     * Cancels the AI move being decided, if any, and starts a new game.
+     */
+    public void newGame(){
+    	cancelAiMove();
+    	stopPondering();
+    	state = new GameState(size, 1);
+    	repaint();
+    	if ( autoPlay && !isHumanTurn() )
+    		startAiMove();
+    }
+
+    /**
+     * Cancels the AI move being decided, if any, and stops the AI thread. Called when the window is closed.
+     */
+    public void close(){
+    	cancelAiMove();
+    	stopPondering();
+    	aiThread.shutdown();
+    }
+
+    /**
+     * Stops the ponder searches of the AIs, which would otherwise go on for the old game.
+     */
+    private void stopPondering(){
+    	if ( ai1 instanceof OthelloAI )
+    		((OthelloAI) ai1).stop();
+    	if ( ai2 instanceof OthelloAI )
+    		((OthelloAI) ai2).stop();
     }
 
     /**
@@ -105,46 +184,139 @@ public class OthelloGUI extends JComponent implements MouseListener
     		else
     			g.drawImage(tie, size*imgSize/2-(imgSize/2), size*imgSize/2+(imgSize/4), this);
     	}		
+    	else if ( aiMove != null ){ // Show that the AI is thinking, and its best move so far
+    		int player = state.getPlayerInTurn();
+    		String message = "Player " + player + (player == 1 ? " (black)" : " (white)") + " is thinking";
+    		if ( thinkingMove != null ){
+    			message += ": depth " + thinkingDepth + ", best so far " + thinkingMove;
+    			g.setColor(Color.RED);
+    			g.drawRect(imgSize+imgSize*thinkingMove.col+2, imgSize+imgSize*thinkingMove.row+2, imgSize-5, imgSize-5);
+    		}
+    		g.setColor(Color.WHITE);
+    		g.drawString(message, imgSize, imgSize/2);
+    	}
     }
 
     public void mouseClicked(MouseEvent e){
+    	if ( state.isFinished() || aiMove != null ) // Nothing to do, or the AI is still thinking
+    		return;
+    	if ( isHumanTurn() )
+    		play(humanSelectedPlace(e));
+    	else
+    		startAiMove();
+    }
+
+    /**
+     * Places the next token for the player in turn if the move is legal, and passes for the next player
+     * if (s)he cannot move. With auto-play, starts the next AI move.
+     */
+    private void play(Position place){
     	int currentPlayer = state.getPlayerInTurn();
-    	if ( !state.isFinished() ){
-    		Position place = getPlaceForNextToken(e);
-    		if ( state.insertToken(place) ){ // Chosen move is legal
-				boolean nextPlayerCannotMove = state.legalMoves().isEmpty();
-   				if ( nextPlayerCannotMove ){ // The next player cannot move
-					repaint();
-   					state.changePlayer();
-   					if ( humanPlayer ){ // If there is a human involved, (s)he needs to know this
-   	  					boolean canMoveAfterwards = !state.legalMoves().isEmpty();
-   	   					if ( canMoveAfterwards ){
-   	   						String message = currentPlayer == 1 ? "Your opponent has no legal moves. It is your turn again." 
-   	   													 	    : "You have no legal moves. Your opponent will make another move (click again).";
-   	   						JOptionPane.showMessageDialog(this, message);
-   	   					}  						
-   					}
-   				}
- 			}
-   			else 
-   				illegalMoveAttempted(place); 		
+    	if ( state.insertToken(place) ){ // Chosen move is legal
+    		boolean nextPlayerCannotMove = state.legalMoves().isEmpty();
+    		if ( nextPlayerCannotMove ){ // The next player cannot move
+    			repaint();
+    			state.changePlayer();
+    			if ( humanPlayer ){ // If there is a human involved, (s)he needs to know this
+    				boolean canMoveAfterwards = !state.legalMoves().isEmpty();
+    				if ( canMoveAfterwards ){
+    					String message = currentPlayer == 1 ? "Your opponent has no legal moves. It is your turn again."
+    														: "You have no legal moves. Your opponent will make another move"
+    															+ (autoPlay ? "." : " (click again).");
+    					JOptionPane.showMessageDialog(this, message);
+    				}
+    			}
+    		}
+    		repaint();
+    		if ( autoPlay && !state.isFinished() && !isHumanTurn() )
+    			startAiMove();
+    	}
+    	else {
+    		illegalMoveAttempted(place);
     		repaint();
     	}
     }
-    
+
+    private boolean isHumanTurn(){
+    	return humanPlayer && state.getPlayerInTurn() == 1;
+    }
+
     /**
-     * Get a position to place the next token (i.e. read mouse click if human
-     * player is in turn, otherwise ask corresponding AI)
+     * Lets the AI in turn decide its move on the AI thread, on a copy of the state. The move is played on
+     * the event dispatch thread when it is decided, unless it was cancelled in the meantime.
      */
-    private Position getPlaceForNextToken(MouseEvent e){
-    	if ( state.getPlayerInTurn() == 2 ) 
-			return ai2.decideMove(state);
-		else {
-			if ( humanPlayer )
-				return humanSelectedPlace(e);
-			else
-				return ai1.decideMove(state);
-		}
+    private void startAiMove(){
+    	IOthelloAI ai = state.getPlayerInTurn() == 2 ? ai2 : ai1;
+    	GameState snapshot = new GameState(state.getBoard(), state.getPlayerInTurn());
+    	int turn = ++this.turn;
+    	thinkingAI = ai;
+    	thinkingDepth = 0;
+    	thinkingMove = null;
+    	// a stop() from cancelAiMove holds until here, also for a move that had not started yet
+    	if ( ai instanceof OthelloAI )
+    		((OthelloAI) ai).clearStop();
+    	else if ( ai instanceof MCTSAI )
+    		((MCTSAI) ai).clearStop();
+    	aiMove = aiThread.submit(() -> {
+    		decidingTurn = turn;
+    		try {
+    			Position place = ai.decideMove(snapshot);
+    			SwingUtilities.invokeLater(() -> aiMoveDecided(turn, place, null));
+    		}
+    		catch (RuntimeException e){
+    			SwingUtilities.invokeLater(() -> aiMoveDecided(turn, null, e));
+    		}
+    	});
+    	repaint();
+    }
+
+    /**
+     * Plays the move the AI decided in the given turn, if that is still the current turn.
+     * @param place the move, or null if the AI failed
+     * @param failure what the AI threw, if it failed that way
+     */
+    private void aiMoveDecided(int turn, Position place, RuntimeException failure){
+    	if ( turn != this.turn )
+    		return; // The move was cancelled
+    	aiMove = null;
+    	thinkingAI = null;
+    	if ( place == null ){
+    		String reason = failure == null ? "" : " (" + failure + ")";
+    		JOptionPane.showMessageDialog(this, "The AI for player "+ state.getPlayerInTurn() + " failed" + reason + ". Please debug!",
+    			"AI Failed", JOptionPane.ERROR_MESSAGE);
+    		repaint();
+    	}
+    	else
+    		play(place);
+    }
+
+    /**
+     * Shows the best move found so far by the AI deciding the given turn.
+     */
+    private void showProgress(int turn, int depth, Position bestMove){
+    	if ( turn != this.turn || aiMove == null )
+    		return;
+    	thinkingDepth = depth;
+    	thinkingMove = bestMove;
+    	repaint();
+    }
+
+    /**
+     * Cancels the AI move being decided, if any: the AI is stopped if it can be, and its move is ignored.
+     */
+    private void cancelAiMove(){
+    	if ( aiMove == null )
+    		return;
+    	turn++;
+    	// not interrupted: stop() below makes the AI return, and an interrupt could make it fail instead
+    	aiMove.cancel(false);
+    	if ( thinkingAI instanceof OthelloAI )
+    		((OthelloAI) thinkingAI).stop();
+    	else if ( thinkingAI instanceof MCTSAI )
+    		((MCTSAI) thinkingAI).stop();
+    	aiMove = null;
+    	thinkingAI = null;
+    	thinkingMove = null;
     }
 
     /**
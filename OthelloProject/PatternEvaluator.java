@@ -0,0 +1,237 @@
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Heuristic evaluation of game states by pattern tables. A pattern is a fixed list of squares; the contents
+ * of its squares (0 empty, 1 black, 2 white) read as a number in base 3 are the index of the pattern, and a
+ * precomputed table gives the value of every index. The value of a state is the sum over all patterns.
+ *
+ * Every corner has three patterns:
+ * - CORNER: the 3x3 squares in the corner. The corner is good, the squares next to it are bad while it is empty,
+ * - EDGE: the squares along each of the two edges from the corner up to the middle (at most EDGE_LENGTH). Tokens
+ *   in a row from an occupied corner cannot be turned any more, and other edge squares are good,
+ * - DIAGONAL: the squares along the diagonal from the corner up to the middle (at most EDGE_LENGTH).
+ *
+ * The evaluator follows a GameState: apply and revert update the indices of only the patterns that contain a
+ * square changed by a move, and the total with them, so evaluating a state costs nothing. The patterns and
+ * tables only depend on the board size and are computed once per size.
+ */
+public class PatternEvaluator {
+
+	// Pattern types
+	private static final int CORNER = 0;
+	private static final int EDGE = 1;
+	private static final int DIAGONAL = 2;
+	private static final int EDGE_LENGTH = 8;
+
+	// Values of the squares of the patterns, for black
+	private static final int CORNER_VALUE = 40;
+	private static final int X_SQUARE_VALUE = -30;	// diagonally next to an empty corner
+	private static final int C_SQUARE_VALUE = -15;	// on the edge next to an empty corner
+	private static final int STABLE_VALUE = 10;		// on the edge in a row from the corner
+	private static final int EDGE_VALUE = 4;
+	private static final int DIAGONAL_VALUE = 2;
+
+	private static final ConcurrentHashMap<Integer, Patterns> PATTERNS = new ConcurrentHashMap<Integer, Patterns>();
+
+	private final int size;
+	private final Patterns patterns;
+	private final int[] index;		// the current index of each pattern
+	private int value;				// the sum of the table values of all patterns, for black
+	private final int[] flips;		// buffer for GameState.getLastFlips
+
+	public PatternEvaluator(int size) {
+		this.size = size;
+		patterns = PATTERNS.computeIfAbsent(size, Patterns::new);
+		index = new int[patterns.types.length];
+		flips = new int[size * size];
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Computes all pattern indices from the board of the state.
+	 */
+	public void reset(GameState s) {
+		int[][] board = s.getBoard();
+		value = 0;
+		for (int p = 0; p < index.length; p++) {
+			int[] squares = patterns.squares[p];
+			int i = 0;
+			for (int k = squares.length - 1; k >= 0; k--)
+				i = 3 * i + board[squares[k] / size][squares[k] % size];
+			index[p] = i;
+			value += patterns.tables[patterns.types[p]][i];
+		}
+	}
+
+	/**
+	 * Updates the patterns for the last move made in the state, which should be the state given to reset.
+	 */
+	public void apply(GameState s) {
+		update(s, 1);
+	}
+
+	/**
+	 * Takes back the update for the last move made in the state. Should be called before the move is undone.
+	 */
+	public void revert(GameState s) {
+		update(s, -1);
+	}
+
+	/**
+	 * Returns the value of the state for the given player.
+	 */
+	public int evaluate(int player) {
+		return player == 1 ? value : -value;
+	}
+
+	private void update(GameState s, int sign) {
+		int square = s.getLastMoveSquare();
+		int player = s.getBoard()[square / size][square % size];
+		// a placed token changes the square from 0 to player, a turned one from the opponent to player
+		change(square, sign * player);
+		int turned = sign * (player == 1 ? -1 : 1);
+		int count = s.getLastFlips(flips);
+		for (int i = 0; i < count; i++)
+			change(flips[i], turned);
+	}
+
+	/**
+	 * Adds delta to the contents of the square in every pattern that contains it.
+	 */
+	private void change(int square, int delta) {
+		int[] members = patterns.members[square];
+		int[] powers = patterns.powers[square];
+		for (int i = 0; i < members.length; i++) {
+			int p = members[i];
+			int[] table = patterns.tables[patterns.types[p]];
+			int old = index[p];
+			index[p] = old + delta * powers[i];
+			value += table[index[p]] - table[old];
+		}
+	}
+
+	/**
+	 * The patterns of one board size and the value tables of the pattern types.
+	 */
+	private static final class Patterns {
+		final int[] types;			// type of each pattern
+		final int[][] squares;		// squares of each pattern as col*size+row, the corner first
+		final int[][] members;		// for each square, the patterns that contain it
+		final int[][] powers;		// for each square, 3^(place of the square in the pattern) in members
+		final int[][] tables;		// value of each index, per type
+
+		Patterns(int size) {
+			int length = Math.min(size / 2, EDGE_LENGTH);
+			ArrayList<Integer> typeList = new ArrayList<Integer>();
+			ArrayList<int[]> squareList = new ArrayList<int[]>();
+			int last = size - 1;
+			for (int corner = 0; corner < 4; corner++) {
+				int col = corner % 2 == 0 ? 0 : last;
+				int row = corner < 2 ? 0 : last;
+				int dc = col == 0 ? 1 : -1;
+				int dr = row == 0 ? 1 : -1;
+				int[] block = new int[9];
+				for (int a = 0; a < 3; a++) {
+					for (int b = 0; b < 3; b++)
+						block[a * 3 + b] = (col + dc * a) * size + row + dr * b;
+				}
+				int[] colEdge = new int[length];
+				int[] rowEdge = new int[length];
+				int[] diagonal = new int[length];
+				for (int i = 0; i < length; i++) {
+					colEdge[i] = (col + dc * i) * size + row;
+					rowEdge[i] = col * size + row + dr * i;
+					diagonal[i] = (col + dc * i) * size + row + dr * i;
+				}
+				typeList.add(CORNER);
+				squareList.add(block);
+				typeList.add(EDGE);
+				squareList.add(colEdge);
+				typeList.add(EDGE);
+				squareList.add(rowEdge);
+				typeList.add(DIAGONAL);
+				squareList.add(diagonal);
+			}
+
+			types = new int[typeList.size()];
+			squares = squareList.toArray(new int[0][]);
+			ArrayList<ArrayList<int[]>> memberList = new ArrayList<ArrayList<int[]>>();
+			for (int s = 0; s < size * size; s++)
+				memberList.add(new ArrayList<int[]>());
+			for (int p = 0; p < types.length; p++) {
+				types[p] = typeList.get(p);
+				int power = 1;
+				for (int square : squares[p]) {
+					memberList.get(square).add(new int[] { p, power });
+					power *= 3;
+				}
+			}
+			members = new int[size * size][];
+			powers = new int[size * size][];
+			for (int s = 0; s < size * size; s++) {
+				ArrayList<int[]> list = memberList.get(s);
+				members[s] = new int[list.size()];
+				powers[s] = new int[list.size()];
+				for (int i = 0; i < list.size(); i++) {
+					members[s][i] = list.get(i)[0];
+					powers[s][i] = list.get(i)[1];
+				}
+			}
+
+			tables = new int[][] { table(CORNER, 9), table(EDGE, length), table(DIAGONAL, length) };
+		}
+
+		/**
+		 * Returns the values of all 3^length indices of a pattern type.
+		 */
+		private static int[] table(int type, int length) {
+			int count = 1;
+			for (int i = 0; i < length; i++)
+				count *= 3;
+			int[] table = new int[count];
+			int[] d = new int[length];
+			for (int index = 0; index < count; index++) {
+				for (int i = 0, rest = index; i < length; i++, rest /= 3)
+					d[i] = rest % 3;
+				table[index] = type == CORNER ? corner(d) : type == EDGE ? edge(d) : diagonal(d);
+			}
+			return table;
+		}
+
+		// d[a*3+b] is the square a columns and b rows away from the corner
+		private static int corner(int[] d) {
+			int v = CORNER_VALUE * sign(d[0]);
+			if (d[0] == 0)
+				v += X_SQUARE_VALUE * sign(d[4]) + C_SQUARE_VALUE * (sign(d[1]) + sign(d[3]));
+			return v;
+		}
+
+		// d[i] is the square i steps along the edge from the corner
+		private static int edge(int[] d) {
+			int v = 0;
+			if (d[0] != 0) {
+				for (int i = 1; i < d.length && d[i] == d[0]; i++)
+					v += STABLE_VALUE * sign(d[0]);
+			}
+			for (int i = 2; i < d.length; i++)
+				v += EDGE_VALUE * sign(d[i]);
+			return v;
+		}
+
+		// d[i] is the square i steps along the diagonal from the corner
+		private static int diagonal(int[] d) {
+			int v = 0;
+			for (int i = 2; i < d.length; i++)
+				v += DIAGONAL_VALUE * sign(d[i]);
+			return v;
+		}
+
+		private static int sign(int contents) {
+			return contents == 1 ? 1 : contents == 2 ? -1 : 0;
+		}
+	}
+}
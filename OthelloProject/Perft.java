@@ -0,0 +1,113 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Perft: counts the states reached after exactly depth plies from a state, by walking the whole game tree
+ * with the move generator of GameState. The counts only depend on the rules, so they check that
+ * legalMoves, insertToken/makeMove and undoMove are right, and the time they take measures how fast.
+ *
+ * A pass counts as a ply, and a game that is over before the depth is reached counts as one state. With
+ * these rules the counts from the standard 8x8 start are the ones published for Othello (KNOWN_8X8).
+ * The moves at the root can be split over several threads, each with its own copy of the state.
+ *
+ * Run as: java Perft [depth] [size] [threads]
+ * or:     java Perft check [max depth] [threads]  (compares the 8x8 counts for depth 1 to max depth with KNOWN_8X8)
+ */
+public class Perft {
+
+	// Counts from the 8x8 start for depth 0, 1, 2, ...
+	static final long[] KNOWN_8X8 = { 1L, 4L, 12L, 56L, 244L, 1396L, 8200L, 55092L, 390216L, 3005288L, 24571284L,
+			212258800L, 1939886636L };
+
+	public static void main(String[] args) throws Exception {
+		int threads = Runtime.getRuntime().availableProcessors();
+		if (args.length > 0 && args[0].equals("check")) {
+			int maxDepth = args.length > 1 ? Integer.parseInt(args[1]) : 9;
+			if (args.length > 2)
+				threads = Integer.parseInt(args[2]);
+			boolean ok = true;
+			for (int depth = 1; depth <= Math.min(maxDepth, KNOWN_8X8.length - 1); depth++) {
+				long nodes = run(new GameState(8, 1), depth, threads);
+				boolean right = nodes == KNOWN_8X8[depth];
+				ok &= right;
+				if (!right)
+					System.out.println("  expected " + KNOWN_8X8[depth]);
+			}
+			System.out.println(ok ? "All counts are right" : "WRONG COUNTS");
+			System.exit(ok ? 0 : 1);
+		}
+		int depth = args.length > 0 ? Integer.parseInt(args[0]) : 9;
+		int size = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+		if (args.length > 2)
+			threads = Integer.parseInt(args[2]);
+		run(new GameState(size, 1), depth, threads);
+	}
+
+	/**
+	 * Counts the states at the given depth, and prints the count, the time and the number of states per second.
+	 */
+	private static long run(GameState s, int depth, int threads) throws Exception {
+		long start = System.nanoTime();
+		long nodes = perft(s, depth, threads);
+		long nanos = Math.max(1, System.nanoTime() - start);
+		System.out.printf("perft(%d) = %,d  %d ms  %,d nodes/s%n", depth, nodes, nanos / 1000000,
+				(long) (nodes * 1e9 / nanos));
+		return nodes;
+	}
+
+	/**
+	 * Returns the number of states at the given depth below s, splitting the moves at the root over the given
+	 * number of threads. s is left as it was.
+	 */
+	public static long perft(GameState s, int depth, int threads) throws Exception {
+		ArrayList<Position> moves = s.legalMoves();
+		if (threads <= 1 || depth < 2 || moves.size() < 2)
+			return perft(s, depth);
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, moves.size()));
+		try {
+			List<Future<Long>> counts = new ArrayList<Future<Long>>();
+			for (Position move : moves) {
+				GameState child = new GameState(s.getBoard(), s.getPlayerInTurn());
+				child.makeMove(move);
+				counts.add(pool.submit(() -> perft(child, depth - 1)));
+			}
+			long nodes = 0;
+			for (Future<Long> count : counts)
+				nodes += count.get();
+			return nodes;
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Returns the number of states at the given depth below s. s is left as it was.
+	 */
+	public static long perft(GameState s, int depth) {
+		if (depth == 0)
+			return 1;
+		ArrayList<Position> moves = s.legalMoves();
+		if (moves.isEmpty()) {
+			s.changePlayer();
+			long nodes;
+			if (s.legalMoves().isEmpty())
+				nodes = 1; // the game is over
+			else
+				nodes = perft(s, depth - 1); // a pass
+			s.changePlayer();
+			return nodes;
+		}
+		if (depth == 1)
+			return moves.size();
+		long nodes = 0;
+		for (Position move : moves) {
+			s.makeMove(move);
+			nodes += perft(s, depth - 1);
+			s.undoMove();
+		}
+		return nodes;
+	}
+}
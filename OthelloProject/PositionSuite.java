@@ -0,0 +1,109 @@
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * A fixed suite of game states for comparing versions of the search: the states are reached by playing
+ * random legal moves from the start position with a fixed seed, so the suite is the same in every run.
+ *
+ * Run as: java PositionSuite [ordering|pvs|threads] [size] [depth] [moves played] [count] [max threads]
+ * ordering, pvs: searches every state to the given depth with and without move ordering (or principal
+ * variation search with aspiration windows) and prints the number of nodes, the share of cutoffs on the
+ * first move and the effective branching factor (nodes^(1/depth)).
+ * threads: searches the suite to the given depth with more and more threads and prints the speedup.
+ */
+public class PositionSuite {
+
+	/**
+	 * Returns count game states in which the given number of moves (not counting passes) have been played
+	 * and the player in turn can move.
+	 */
+	public static ArrayList<GameState> positions(int size, int movesPlayed, int count, long seed) {
+		Random random = new Random(seed);
+		ArrayList<GameState> positions = new ArrayList<GameState>();
+		while (positions.size() < count) {
+			GameState s = new GameState(size, 1);
+			int played = 0;
+			while (played < movesPlayed && !s.isFinished()) {
+				ArrayList<Position> moves = s.legalMoves();
+				if (moves.isEmpty()) {
+					s.changePlayer();
+					continue;
+				}
+				s.insertToken(moves.get(random.nextInt(moves.size())));
+				played++;
+			}
+			if (s.isFinished())
+				continue;
+			if (s.legalMoves().isEmpty())
+				s.changePlayer();
+			positions.add(new GameState(s.getBoard(), s.getPlayerInTurn()));
+		}
+		return positions;
+	}
+
+	public static void main(String[] args) {
+		String mode = args.length > 0 ? args[0] : "ordering";
+		int size = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+		int depth = args.length > 2 ? Integer.parseInt(args[2]) : 7;
+		int movesPlayed = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+		int count = args.length > 4 ? Integer.parseInt(args[4]) : 20;
+		int maxThreads = args.length > 5 ? Integer.parseInt(args[5]) : Runtime.getRuntime().availableProcessors();
+		ArrayList<GameState> suite = positions(size, movesPlayed, count, 1);
+		if (mode.equals("threads"))
+			compareThreads(suite, depth, maxThreads);
+		else
+			compareFeature(suite, depth, mode);
+	}
+
+	/**
+	 * Searches the suite with the feature ("ordering" or "pvs") off and on, and prints the nodes, the share of
+	 * cutoffs on the first move and the effective branching factor.
+	 */
+	private static void compareFeature(ArrayList<GameState> suite, int depth, String feature) {
+		for (boolean on : new boolean[] { false, true }) {
+			long nodes = 0;
+			long cutoffs = 0;
+			long firstMoveCutoffs = 0;
+			double logBranching = 0;
+			long start = System.currentTimeMillis();
+			for (GameState s : suite) {
+				OthelloAI ai = new OthelloAI(16, TranspositionTable.ReplacementPolicy.TWO_TIER);
+				if (feature.equals("pvs"))
+					ai.setPrincipalVariationSearch(on, on);
+				else
+					ai.setMoveOrdering(on);
+				ai.minimaxSearch(s, depth);
+				nodes += ai.getNodeCount();
+				cutoffs += ai.getCutoffCount();
+				firstMoveCutoffs += ai.getFirstMoveCutoffCount();
+				logBranching += Math.log(ai.getNodeCount()) / depth;
+			}
+			System.out.printf("%s %-3s: %,d nodes, %.1f%% first-move cutoffs, effective branching factor %.2f, %d ms%n",
+					feature, on ? "on" : "off", nodes, 100.0 * firstMoveCutoffs / Math.max(1, cutoffs),
+					Math.exp(logBranching / suite.size()), System.currentTimeMillis() - start);
+		}
+	}
+
+	/**
+	 * Searches the suite with 1, 2, 4, ... threads up to maxThreads (by default the number of processors), and
+	 * prints the time to reach the depth and the speedup over one thread.
+	 */
+	private static void compareThreads(ArrayList<GameState> suite, int depth, int maxThreads) {
+		long oneThread = 0;
+		for (int threads = 1; threads <= maxThreads; threads = threads < maxThreads ? Math.min(2 * threads, maxThreads) : threads + 1) {
+			OthelloAI ai = new OthelloAI(64, TranspositionTable.ReplacementPolicy.TWO_TIER, threads);
+			long nodes = 0;
+			long start = System.nanoTime();
+			for (GameState s : suite) {
+				ai.minimaxSearch(s, depth);
+				nodes += ai.getNodeCount();
+			}
+			long millis = Math.max(1, (System.nanoTime() - start) / 1000000);
+			if (threads == 1)
+				oneThread = millis;
+			System.out.printf("%2d threads: %6d ms, %,d nodes, %,d nodes/s, speedup %.2f%n", threads, millis, nodes,
+					nodes * 1000 / millis, (double) oneThread / millis);
+			ai.setThreads(1); // shuts down the helper threads
+		}
+	}
+}
@@ -0,0 +1,20 @@
+/**
+ * Is told about every move OthelloAI decides, and about the progress of its searches
+ * (see OthelloAI.addSearchListener).
+ */
+public interface SearchListener {
+
+	/**
+	 * Called on the thread of decideMove, after the move has been decided and before it is returned,
+	 * so it should be quick.
+	 */
+	public void searchFinished(SearchStatistics statistics);
+
+	/**
+	 * Called on the thread of decideMove each time the main search completes an iteration, with the best
+	 * move so far. Not called for the ponder search.
+	 */
+	public default void iterationCompleted(int depth, Position bestMove) {
+	}
+
+}
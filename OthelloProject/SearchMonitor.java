@@ -0,0 +1,84 @@
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * A SearchListener that keeps the statistics of the last move and totals over all moves, and can publish
+ * them as an MXBean, so they can be read over JMX without OthelloAI writing anything itself:
+ *
+ *     SearchMonitor monitor = new SearchMonitor();
+ *     ai.addSearchListener(monitor);
+ *     monitor.register("black"); // OthelloAI:type=SearchMonitor,name=black
+ */
+public class SearchMonitor implements SearchListener, SearchMonitorMXBean {
+
+	private volatile SearchStatistics lastSearch;
+	private long moves;
+	private long totalNodes;
+	private long totalMillis;
+
+	@Override
+	public synchronized void searchFinished(SearchStatistics statistics) {
+		lastSearch = statistics;
+		moves++;
+		totalNodes += statistics.getNodes();
+		totalMillis += statistics.getMillis();
+	}
+
+	/**
+	 * Registers the monitor with the platform MBean server under the name OthelloAI:type=SearchMonitor,name=name.
+	 */
+	public void register(String name) throws JMException {
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName(name));
+	}
+
+	/**
+	 * Removes the monitor registered under the given name from the platform MBean server.
+	 */
+	public void unregister(String name) throws JMException {
+		ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName(name));
+	}
+
+	private static ObjectName objectName(String name) throws JMException {
+		return new ObjectName("OthelloAI:type=SearchMonitor,name=" + ObjectName.quote(name));
+	}
+
+	@Override
+	public SearchStatistics getLastSearch() {
+		return lastSearch;
+	}
+
+	@Override
+	public synchronized long getMoves() {
+		return moves;
+	}
+
+	@Override
+	public synchronized long getTotalNodes() {
+		return totalNodes;
+	}
+
+	@Override
+	public synchronized long getTotalMillis() {
+		return totalMillis;
+	}
+
+	@Override
+	public synchronized double getAverageMoveMillis() {
+		return moves == 0 ? 0 : (double) totalMillis / moves;
+	}
+
+	@Override
+	public synchronized double getAverageNodesPerSecond() {
+		return totalMillis == 0 ? 0 : totalNodes * 1000.0 / totalMillis;
+	}
+
+	@Override
+	public synchronized void reset() {
+		lastSearch = null;
+		moves = 0;
+		totalNodes = 0;
+		totalMillis = 0;
+	}
+}
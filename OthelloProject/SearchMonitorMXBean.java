@@ -0,0 +1,24 @@
+/**
+ * Management interface of SearchMonitor: the statistics of the last move and totals over all moves, for
+ * JMX clients such as jconsole.
+ */
+public interface SearchMonitorMXBean {
+
+	public SearchStatistics getLastSearch();
+
+	public long getMoves();
+
+	public long getTotalNodes();
+
+	public long getTotalMillis();
+
+	public double getAverageMoveMillis();
+
+	public double getAverageNodesPerSecond();
+
+	/**
+	 * Forgets all moves seen so far.
+	 */
+	public void reset();
+
+}
@@ -0,0 +1,124 @@
+/**
+ * What OthelloAI did to decide one move: where the move came from, how long it took, and for a search the
+ * counters of the search summed over all threads. Given to every SearchListener after each decideMove.
+ */
+public class SearchStatistics {
+
+	public enum Source {
+		BOOK,		// played from the opening book
+		ENDGAME,	// found by the exact endgame solver
+		PONDER,		// found by the ponder search on the opponent's time
+		SEARCH		// found by the heuristic search
+	}
+
+	private final Source source;
+	private final int moveCol;
+	private final int moveRow;
+	private final long millis;
+	private final int depth;
+	private final long nodes;
+	private final long leafEvaluations;
+	private final long cutoffs;
+	private final long firstMoveCutoffs;
+	private final long tableProbes;
+	private final long tableHits;
+
+	public SearchStatistics(Source source, Position move, long millis, int depth, long nodes, long leafEvaluations,
+			long cutoffs, long firstMoveCutoffs, long tableProbes, long tableHits) {
+		this.source = source;
+		this.moveCol = move == null ? -1 : move.col;
+		this.moveRow = move == null ? -1 : move.row;
+		this.millis = millis;
+		this.depth = depth;
+		this.nodes = nodes;
+		this.leafEvaluations = leafEvaluations;
+		this.cutoffs = cutoffs;
+		this.firstMoveCutoffs = firstMoveCutoffs;
+		this.tableProbes = tableProbes;
+		this.tableHits = tableHits;
+	}
+
+	public Source getSource() {
+		return source;
+	}
+
+	/**
+	 * Returns the column of the chosen move, or -1 if there was none.
+	 */
+	public int getMoveCol() {
+		return moveCol;
+	}
+
+	/**
+	 * Returns the row of the chosen move, or -1 if there was none.
+	 */
+	public int getMoveRow() {
+		return moveRow;
+	}
+
+	/**
+	 * Returns the wall time of decideMove in milliseconds.
+	 */
+	public long getMillis() {
+		return millis;
+	}
+
+	/**
+	 * Returns the depth of the deepest completed iteration of the search, or the number of empty squares
+	 * for the endgame solver; 0 if nothing was searched.
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	public long getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * Returns the number of nodes scored by the heuristic evaluation or as a finished game.
+	 */
+	public long getLeafEvaluations() {
+		return leafEvaluations;
+	}
+
+	/**
+	 * Returns the number of beta cutoffs.
+	 */
+	public long getCutoffs() {
+		return cutoffs;
+	}
+
+	/**
+	 * Returns the share of the beta cutoffs that happened on the first move tried (0-1).
+	 */
+	public double getFirstMoveCutoffRate() {
+		return cutoffs == 0 ? 0 : (double) firstMoveCutoffs / cutoffs;
+	}
+
+	/**
+	 * Returns the share of the transposition table probes that found an entry (0-1).
+	 */
+	public double getTableHitRate() {
+		return tableProbes == 0 ? 0 : (double) tableHits / tableProbes;
+	}
+
+	public double getNodesPerSecond() {
+		return millis == 0 ? 0 : nodes * 1000.0 / millis;
+	}
+
+	/**
+	 * Returns nodes^(1/depth): the number of moves per node a full tree of the same size and depth would have.
+	 */
+	public double getEffectiveBranchingFactor() {
+		return depth == 0 || nodes == 0 ? 0 : Math.pow(nodes, 1.0 / depth);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s (%d,%d) in %d ms: depth %d, %d nodes (%.0f/s), %d leaves, %d cutoffs (%.1f%% first move), "
+				+ "table hits %.1f%%, branching factor %.2f", source, moveCol, moveRow, millis, depth, nodes,
+				getNodesPerSecond(), leafEvaluations, cutoffs, 100 * getFirstMoveCutoffRate(), 100 * getTableHitRate(),
+				getEffectiveBranchingFactor());
+	}
+}
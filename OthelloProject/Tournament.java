@@ -0,0 +1,296 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Plays many games between two AIs without the GUI, several at a time, and writes the results.
+ *
+ * The AI classes are given and loaded as for Othello (see Othello.parseGameLogicParam). Every thread makes
+ * one instance of each AI and uses it for all its games, since an OthelloAI holds a large transposition
+ * table; an OthelloAI notices by itself when a new game starts. The tables of the OthelloAIs are made small
+ * enough that all of them together take at most half of the heap.
+ *
+ * The AIs take turns playing black, and each opening of random moves is played twice, once with each AI as
+ * black, so neither AI is favoured by the openings. An AI that returns an illegal move or throws an exception
+ * loses the game. Output of the AIs on System.out is discarded.
+ *
+ * Writes prefix.csv with one line per game and prefix.json with the totals: wins, draws and losses of the
+ * first AI, the mean difference in tokens (first AI minus second AI), and the time per move of each AI.
+ *
+ * Run as: java Tournament OthelloAI1 OthelloAI2 [games] [size] [threads] [random plies] [game millis] [prefix]
+ * game millis is the clock per game of AIs that are an OthelloAI (by default their own).
+ * The AIs search on -Dothello.threads threads each (see OthelloAI.THREADS_PROPERTY); by default the processors
+ * are shared out between the games that are played at the same time. With -Dothello.ponder=true the
+ * OthelloAIs ponder.
+ */
+public class Tournament {
+
+	// Results of a game for the first AI
+	private static final String WIN = "win";
+	private static final String DRAW = "draw";
+	private static final String LOSS = "loss";
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2 || args[0].equalsIgnoreCase(Othello.HUMAN_CMD) || args[1].equalsIgnoreCase(Othello.HUMAN_CMD)) {
+			System.err.println("Usage: java Tournament OthelloAI1 OthelloAI2 [games] [size] [threads] [random plies] [game millis] [prefix]");
+			System.exit(1);
+		}
+		String[] ais = { args[0], args[1] };
+		int games = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+		int size = args.length > 3 ? Integer.parseInt(args[3]) : 8;
+		int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+		int randomPlies = args.length > 5 ? Integer.parseInt(args[5]) : 4;
+		long gameMillis = args.length > 6 ? Long.parseLong(args[6]) : 0;
+		String prefix = args.length > 7 ? args[7] : "tournament";
+		if (System.getProperty(OthelloAI.THREADS_PROPERTY) == null) {
+			int processors = Runtime.getRuntime().availableProcessors();
+			System.setProperty(OthelloAI.THREADS_PROPERTY, String.valueOf(Math.max(1, processors / Math.max(1, threads))));
+		}
+		// fail now rather than in every game if a class cannot be loaded
+		newInstance(ais[0], 1);
+		newInstance(ais[1], 1);
+
+		PrintStream out = System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+		List<Result> results;
+		try {
+			results = play(ais, games, size, threads, randomPlies, gameMillis);
+		} finally {
+			System.setOut(out);
+		}
+		write(prefix, ais, size, results);
+		Summary summary = new Summary(results);
+		System.out.printf("%s vs %s: %d wins, %d draws, %d losses, mean token difference %.2f%n", ais[0], ais[1],
+				summary.wins, summary.draws, summary.losses, summary.meanDifference);
+	}
+
+	/**
+	 * Plays the games on the given number of threads and returns their results in the order of the games.
+	 */
+	public static List<Result> play(String[] ais, int games, int size, int threads, int randomPlies, long gameMillis)
+			throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+		ThreadLocal<IOthelloAI[]> instances = new ThreadLocal<IOthelloAI[]>();
+		// two AIs per thread
+		int tableMegabytes = (int) Math.min(OthelloAI.TABLE_MEGABYTES,
+				Runtime.getRuntime().maxMemory() / (1 << 20) / (4 * Math.max(1, threads)));
+		List<Future<Result>> futures = new ArrayList<Future<Result>>();
+		for (int g = 0; g < games; g++) {
+			int game = g;
+			futures.add(pool.submit(() -> playGame(ais, instances, tableMegabytes, game, size, randomPlies, gameMillis)));
+		}
+		List<Result> results = new ArrayList<Result>();
+		try {
+			for (Future<Result> f : futures) {
+				results.add(f.get());
+				if (results.size() % 10 == 0)
+					System.err.println(results.size() + "/" + games + " games");
+			}
+		} finally {
+			pool.shutdown();
+		}
+		return results;
+	}
+
+	/**
+	 * Plays one game with the AI instances of the current thread, which are made for its first game.
+	 * In even games the first AI is black. Games 2k and 2k+1 start with the same random moves.
+	 */
+	private static Result playGame(String[] ais, ThreadLocal<IOthelloAI[]> instances, int tableMegabytes, int game, int size,
+			int randomPlies, long gameMillis) throws Exception {
+		IOthelloAI[] instance = instances.get(); // indexed by AI
+		if (instance == null) {
+			instance = new IOthelloAI[] { newInstance(ais[0], tableMegabytes), newInstance(ais[1], tableMegabytes) };
+			for (IOthelloAI ai : instance) {
+				if (gameMillis > 0 && ai instanceof OthelloAI)
+					((OthelloAI) ai).setGameTime(gameMillis);
+			}
+			instances.set(instance);
+		}
+		int first = game % 2 == 0 ? 1 : 2; // the player of the first AI
+		IOthelloAI[] players = new IOthelloAI[2]; // indexed by player - 1
+		players[first - 1] = instance[0];
+		players[2 - first] = instance[1];
+
+		Result result = new Result(game, first);
+		Random random = new Random(game / 2);
+		GameState s = new GameState(size, 1);
+		int ply = 0;
+		while (!s.isFinished()) {
+			ArrayList<Position> moves = s.legalMoves();
+			if (moves.isEmpty()) {
+				s.changePlayer();
+				continue;
+			}
+			int player = s.getPlayerInTurn();
+			Position move;
+			if (ply < randomPlies) {
+				move = moves.get(random.nextInt(moves.size()));
+			} else {
+				// the AI gets a copy, so it cannot change the game
+				long start = System.nanoTime();
+				try {
+					move = players[player - 1].decideMove(new GameState(s.getBoard(), player));
+				} catch (RuntimeException e) {
+					move = null; // an AI that fails loses like one that plays an illegal move
+				}
+				result.addMove(player == first ? 0 : 1, System.nanoTime() - start);
+				if (move == null || !moves.contains(move)) {
+					result.forfeit(player == first ? 0 : 1, size);
+					return result;
+				}
+			}
+			s.insertToken(move);
+			ply++;
+		}
+		int[] tokens = s.countTokens();
+		result.finish(tokens[first - 1] - tokens[2 - first]);
+		return result;
+	}
+
+	/**
+	 * Makes an instance of the named AI class. An OthelloAI gets a table of the given size and the settings of
+	 * the system properties, like the no-arg constructor.
+	 */
+	private static IOthelloAI newInstance(String ai, int tableMegabytes) throws Exception {
+		if (Class.forName(ai) == OthelloAI.class) {
+			OthelloAI othelloAI = new OthelloAI(tableMegabytes, TranspositionTable.ReplacementPolicy.TWO_TIER,
+					OthelloAI.defaultThreads());
+			othelloAI.setPondering(Boolean.getBoolean(OthelloAI.PONDER_PROPERTY));
+			return othelloAI;
+		}
+		return Othello.parseGameLogicParam(ai);
+	}
+
+	/**
+	 * Writes prefix.csv and prefix.json.
+	 */
+	private static void write(String prefix, String[] ais, int size, List<Result> results) throws IOException {
+		try (PrintWriter csv = new PrintWriter(prefix + ".csv")) {
+			csv.println("game,first_ai_color,result,token_difference,forfeit,moves_1,mean_ms_1,max_ms_1,moves_2,mean_ms_2,max_ms_2");
+			for (Result r : results) {
+				csv.printf(Locale.ROOT, "%d,%s,%s,%d,%b,%d,%.3f,%.3f,%d,%.3f,%.3f%n", r.game,
+						r.first == 1 ? "black" : "white", r.outcome, r.difference, r.forfeit,
+						r.times.get(0).size(), mean(r.times.get(0)), max(r.times.get(0)),
+						r.times.get(1).size(), mean(r.times.get(1)), max(r.times.get(1)));
+			}
+		}
+		Summary summary = new Summary(results);
+		try (PrintWriter json = new PrintWriter(prefix + ".json")) {
+			json.println("{");
+			json.printf("  \"ai1\": \"%s\",%n", ais[0]);
+			json.printf("  \"ai2\": \"%s\",%n", ais[1]);
+			json.printf("  \"size\": %d,%n", size);
+			json.printf("  \"games\": %d,%n", results.size());
+			json.printf("  \"wins\": %d,%n", summary.wins);
+			json.printf("  \"draws\": %d,%n", summary.draws);
+			json.printf("  \"losses\": %d,%n", summary.losses);
+			json.printf("  \"forfeits\": [%d, %d],%n", summary.forfeits[0], summary.forfeits[1]);
+			json.printf(Locale.ROOT, "  \"mean_token_difference\": %.3f,%n", summary.meanDifference);
+			for (int ai = 0; ai < 2; ai++) {
+				double[] ms = summary.moveMillis[ai];
+				json.printf(Locale.ROOT,
+						"  \"move_ms_%d\": {\"moves\": %d, \"mean\": %.3f, \"p50\": %.3f, \"p95\": %.3f, \"max\": %.3f}%s%n",
+						ai + 1, ms.length, mean(ms), percentile(ms, 50), percentile(ms, 95),
+						ms.length == 0 ? 0 : ms[ms.length - 1], ai == 0 ? "," : "");
+			}
+			json.println("}");
+		}
+	}
+
+	private static double mean(List<Double> values) {
+		return values.stream().mapToDouble(d -> d).average().orElse(0);
+	}
+
+	private static double max(List<Double> values) {
+		return values.stream().mapToDouble(d -> d).max().orElse(0);
+	}
+
+	private static double mean(double[] values) {
+		return Arrays.stream(values).average().orElse(0);
+	}
+
+	/**
+	 * Returns the given percentile of sorted values.
+	 */
+	private static double percentile(double[] sorted, int percent) {
+		if (sorted.length == 0)
+			return 0;
+		return sorted[Math.min(sorted.length - 1, (int) Math.ceil(percent / 100.0 * sorted.length) - 1)];
+	}
+
+	/**
+	 * The result of one game, for the first AI.
+	 */
+	public static class Result {
+		final int game;
+		final int first;		// the player (color) of the first AI
+		String outcome;			// WIN, DRAW or LOSS
+		int difference;			// tokens of the first AI minus tokens of the second AI
+		boolean forfeit;		// the game was lost by an illegal move or an exception
+		final List<List<Double>> times = List.of(new ArrayList<Double>(), new ArrayList<Double>()); // ms per move, per AI
+
+		Result(int game, int first) {
+			this.game = game;
+			this.first = first;
+		}
+
+		void addMove(int ai, long nanos) {
+			times.get(ai).add(nanos / 1e6);
+		}
+
+		void finish(int difference) {
+			this.difference = difference;
+			outcome = difference > 0 ? WIN : difference == 0 ? DRAW : LOSS;
+		}
+
+		/**
+		 * Ends the game with a loss by all squares for the AI that made an illegal move or threw an exception.
+		 */
+		void forfeit(int ai, int size) {
+			forfeit = true;
+			finish(ai == 0 ? -size * size : size * size);
+		}
+	}
+
+	/**
+	 * Totals over all games.
+	 */
+	private static class Summary {
+		int wins;
+		int draws;
+		int losses;
+		int[] forfeits = new int[2];	// games lost by an illegal move or an exception, per AI
+		double meanDifference;
+		double[][] moveMillis = new double[2][];	// all move times per AI, sorted
+
+		Summary(List<Result> results) {
+			long difference = 0;
+			for (Result r : results) {
+				if (r.outcome.equals(WIN))
+					wins++;
+				else if (r.outcome.equals(DRAW))
+					draws++;
+				else
+					losses++;
+				if (r.forfeit)
+					forfeits[r.difference < 0 ? 0 : 1]++;
+				difference += r.difference;
+			}
+			meanDifference = results.isEmpty() ? 0 : (double) difference / results.size();
+			for (int ai = 0; ai < 2; ai++) {
+				int a = ai;
+				moveMillis[ai] = results.stream().flatMap(r -> r.times.get(a).stream()).mapToDouble(d -> d).sorted().toArray();
+			}
+		}
+	}
+}
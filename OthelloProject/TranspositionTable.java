@@ -0,0 +1,137 @@
+import java.util.Arrays;
+
+/**
+ * Fixed-size hash table of search results, indexed by the Zobrist key of a game state (see
+ * GameState.getHashKey). Each entry holds the key, the depth that was searched below the state, whether
+ * the score is exact or only a lower or upper bound, the score and the best move found.
+ *
+ * The table is allocated once with a given memory budget and never grows; when two states compete for
+ * the same place the replacement policy decides which one is kept. Lookups and stores do not allocate.
+ *
+ * The table can be shared by several search threads without locking: an entry is two longs, the packed
+ * data and the key xor'ed with the data. A reader only accepts an entry if the two still match, so an
+ * entry that was half overwritten by another thread is seen as a miss instead of as wrong data.
+ */
+public class TranspositionTable {
+
+	// Bound types
+	public static final int EXACT = 0;
+	public static final int LOWER_BOUND = 1; // the real score is at least the stored score
+	public static final int UPPER_BOUND = 2; // the real score is at most the stored score
+
+	public enum ReplacementPolicy {
+		ALWAYS,				// a new entry always replaces the old one
+		DEPTH_PREFERRED,	// a new entry only replaces an old one of the same state, of a previous search or of less depth
+		TWO_TIER			// two entries per slot: one kept by DEPTH_PREFERRED, the other by ALWAYS
+	}
+
+	private static final int BYTES_PER_ENTRY = 16;
+
+	private final ReplacementPolicy policy;
+	private final int mask;
+
+	// Entry i is entries[2*i] (key ^ data) and entries[2*i+1] (data). The data is the score (bits 32-63),
+	// the move + 1 (bits 16-31), the generation (bits 10-15), the bound (bits 8-9) and the depth (bits 0-7).
+	// The generation is 1-63, so the data of a used entry is never 0.
+	private final long[] entries;
+	private volatile int generation = 1;
+
+	/**
+	 * Creates a table that uses at most (about) the given number of megabytes.
+	 * @param megabytes the memory budget. The number of entries is rounded down to a power of two.
+	 * @param policy what to do when a new entry maps to an occupied place
+	 */
+	public TranspositionTable(int megabytes, ReplacementPolicy policy) {
+		long count = Math.max(2, (long) megabytes * 1024 * 1024 / BYTES_PER_ENTRY);
+		int size = (int) Long.highestOneBit(Math.min(count, 1 << 29));
+		this.policy = policy;
+		this.mask = size - 1;
+		entries = new long[2 * size];
+	}
+
+	/**
+	 * Marks the start of a new search, so entries of earlier searches are replaced first.
+	 */
+	public void newSearch() {
+		generation = generation % 63 + 1;
+	}
+
+	/**
+	 * Removes all entries.
+	 */
+	public void clear() {
+		Arrays.fill(entries, 0);
+	}
+
+	/**
+	 * Returns the data of the entry for the given key, or 0 if the table holds no entry for it.
+	 * The data can be decoded with depth, bound, score and move.
+	 */
+	public long probe(long key) {
+		int i = (int) key & mask;
+		if (policy == ReplacementPolicy.TWO_TIER) {
+			i &= ~1;
+			long data = entries[2 * i + 1];
+			if (data != 0 && (entries[2 * i] ^ data) == key)
+				return data;
+			i++;
+		}
+		long data = entries[2 * i + 1];
+		if (data != 0 && (entries[2 * i] ^ data) == key)
+			return data;
+		return 0;
+	}
+
+	public static int depth(long data) {
+		return (int) data & 0xFF;
+	}
+
+	public static int bound(long data) {
+		return (int) (data >>> 8) & 3;
+	}
+
+	public static int score(long data) {
+		return (int) (data >> 32);
+	}
+
+	/**
+	 * Returns the best move of the entry as col*size+row, or -1 if it has none.
+	 */
+	public static int move(long data) {
+		return (int) ((data >>> 16) & 0xFFFF) - 1;
+	}
+
+	/**
+	 * Stores a search result for the state with the given key, subject to the replacement policy.
+	 * @param depth the number of plies searched below the state (0-255)
+	 * @param bound EXACT, LOWER_BOUND or UPPER_BOUND
+	 * @param move the best move as col*size+row, or -1 if there is none
+	 */
+	public void store(long key, int depth, int bound, int score, int move) {
+		int i = (int) key & mask;
+		switch (policy) {
+			case ALWAYS:
+				break;
+			case DEPTH_PREFERRED:
+				if (!replaces(i, key, depth))
+					return;
+				break;
+			case TWO_TIER:
+				i &= ~1;
+				if (!replaces(i, key, depth))
+					i++; // the always-replace tier
+				break;
+		}
+		long data = (long) score << 32 | (long) (move + 1) << 16 | generation << 10 | bound << 8 | Math.min(depth, 255);
+		entries[2 * i] = key ^ data;
+		entries[2 * i + 1] = data;
+	}
+
+	/**
+	 * Returns true if a new entry of the given depth should replace the one at index i under the depth-preferred rule.
+	 */
+	private boolean replaces(int i, long key, int depth) {
+		long data = entries[2 * i + 1];
+		return data == 0 || (entries[2 * i] ^ data) == key || ((int) (data >>> 10) & 63) != generation || depth >= depth(data);
+	}
+}
@@ -0,0 +1,102 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntToLongFunction;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * JMH benchmarks of the hot paths of GameState and the search, for board sizes 6, 8 and 10 and opening,
+ * midgame and endgame states. The operations are described in BenchmarkCases; every invocation runs one
+ * of them on all states of the suite, and counts as that many operations.
+ *
+ * Build and run from OthelloProject, with the gc profiler for the allocation rate (gc.alloc.rate in MB/s
+ * and gc.alloc.rate.norm in bytes per operation):
+ *   mvn -B package
+ *   java -jar target/benchmarks.jar -prof gc
+ * A single benchmark or size: java -jar target/benchmarks.jar OthelloBenchmark.search -p size=8 -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OthelloBenchmark {
+
+	private static final int STATES = 32; // BenchmarkCases.STATES
+
+	@Param({ "6", "8", "10" })
+	public int size;
+
+	@Param({ "opening", "midgame", "endgame" })
+	public String phase;
+
+	private IntToLongFunction legalMoves;
+	private IntToLongFunction moveList;
+	private IntToLongFunction insertToken;
+	private IntToLongFunction isFinished;
+	private IntToLongFunction search;
+
+	@Setup
+	public void setup() throws ReflectiveOperationException {
+		legalMoves = operation("legalMoves");
+		moveList = operation("moveList");
+		insertToken = operation("insertToken");
+		isFinished = operation("isFinished");
+		search = operation("search");
+	}
+
+	private IntToLongFunction operation(String name) throws ReflectiveOperationException {
+		return (IntToLongFunction) Class.forName("BenchmarkCases")
+				.getMethod("operation", String.class, int.class, String.class)
+				.invoke(null, name, size, phase);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(STATES)
+	public void legalMoves(Blackhole blackhole) {
+		run(legalMoves, blackhole);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(STATES)
+	public void moveList(Blackhole blackhole) {
+		run(moveList, blackhole);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(STATES)
+	public void insertToken(Blackhole blackhole) {
+		run(insertToken, blackhole);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(STATES)
+	public void isFinished(Blackhole blackhole) {
+		run(isFinished, blackhole);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(STATES)
+	public void search(Blackhole blackhole) {
+		run(search, blackhole);
+	}
+
+	private static void run(IntToLongFunction operation, Blackhole blackhole) {
+		for (int i = 0; i < STATES; i++)
+			blackhole.consume(operation.applyAsLong(i));
+	}
+}
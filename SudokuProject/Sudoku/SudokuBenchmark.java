@@ -0,0 +1,302 @@
+/**
+ * Solves a fixed set of puzzles with SudokuSolver and prints the time, the number of search nodes and the
+ * number of backtracks for each, so variable orders, value orders and inference can be compared:
+ *
+ *     java SudokuBenchmark [variable order] [value order] [inference] [max block size]
+ *
+ * The orders and inference are names of SudokuSolver.VariableOrder, ValueOrder and Inference (by default
+ * those of SudokuSolver). There are hard 9x9 puzzles and random 16x16 and 25x25 puzzles with 55-70% of the
+ * cells empty; with FIRST or FORWARD_CHECKING the larger ones can take very long, which max block size 3
+ * or 4 skips. Every solution is checked against the rules and the givens.
+ */
+public class SudokuBenchmark {
+
+	// one string per row: '.' for an empty cell, 1-9 and then A-P for the values 1-25
+	private static final String VALUES = "123456789ABCDEFGHIJKLMNOP";
+
+	private static final String[][] PUZZLES = {
+			{
+				"..3.2.6..",
+				"9..3.5..1",
+				"..18.64..",
+				"..81.29..",
+				"7.......8",
+				"..67.82..",
+				"..26.95..",
+				"8..2.3..9",
+				"..5.1.3.."
+			},
+			{
+				"8........",
+				"..36.....",
+				".7..9.2..",
+				".5...7...",
+				"....457..",
+				"...1...3.",
+				"..1....68",
+				"..85...1.",
+				".9....4.."
+			},
+			{
+				"4.....8.5",
+				".3.......",
+				"...7.....",
+				".2.....6.",
+				"....8.4..",
+				"....1....",
+				"...6.3.7.",
+				"5..2.....",
+				"1.4......"
+			},
+			{
+				"..53.....",
+				"8......2.",
+				".7..1.5..",
+				"4....53..",
+				".1..7...6",
+				"..32...8.",
+				".6.5....9",
+				"..4....3.",
+				".....97.."
+			},
+			{
+				".....6...",
+				".59.....8",
+				"2....8...",
+				".45......",
+				"..3......",
+				"..6..3.54",
+				"...325..6",
+				".........",
+				"........."
+			},
+			{
+				".....79..G8.2..5",
+				"8..G.....7...CE4",
+				"..97EC4.........",
+				"B.......4....7..",
+				"..E5..F.84..7..B",
+				".C84.9.7........",
+				"17.9..8....3G.DF",
+				".GF...E3.9....6.",
+				"......7FG..8....",
+				"........7.A...5.",
+				"AF.15..E...B.D.G",
+				".B3....8C6.....7",
+				"..6E......C...7.",
+				"G.1F3E...B.94..D",
+				"..D87...1...5...",
+				"..2B..D...35...."
+			},
+			{
+				"36.1...D....2B..",
+				"C...2.E8...D1.3.",
+				"...25.....1.F.7.",
+				"....1.3..B.8..C.",
+				".57.62......G1AC",
+				"DF...1A.826...9.",
+				"8..64.97..G...D.",
+				"..CG...E.5.76...",
+				"49F.......E..A..",
+				".D.E......3.7...",
+				"........GA.5....",
+				".A....B24....86.",
+				".......G.E......",
+				".C.9...6.7DB...G",
+				".3....F...9.8..6",
+				".E...C.4.3A..7.."
+			},
+			{
+				"6.....ED........",
+				"..F.7....C...6..",
+				"45..F8........9.",
+				"DE.CG2....54.AF3",
+				".2....C.......D.",
+				"..A........5...8",
+				"...7.F.3...1....",
+				".8.F..B.A.C.G.42",
+				"....C.D78.......",
+				"9....5..........",
+				".D....6..5......",
+				"..............CD",
+				".9....G2ED...81.",
+				"B.ED.........C39",
+				".F1.ED..3.9C4.5G",
+				"..5........8...7"
+			},
+			{
+				"2..P..4L...8.BM.AG.....7.",
+				"...MK...7.O..4.J.2..I.E..",
+				"7.3.FJH......A9.4CL....8.",
+				".AI9..B.8.J.1...D.FN..L.5",
+				"C..5.I...9.7..N.B..M.H12P",
+				"9G.K....M.HP.2..7N.1....E",
+				"P.HL....5E.M68..G9..D.3N.",
+				"M.BF.D7...4...E..PJL...9.",
+				"...13H..PL..I......EB8.M.",
+				".C4EO.....D......M6.....L",
+				".......BF.2.....N1...5.EI",
+				"F.83..ND1J.E45I2....G9.K.",
+				"1.....PHLOGK.9....4I8MB..",
+				"L.2.HC.4EI...M..9K...N...",
+				".5...G..K.7..N.8.F......O",
+				".IE.5K6..8...J..........C",
+				"HJ.2NLO.4C...68.IA.GF3.D7",
+				".O.C..I...F..37..B98.J..2",
+				"D..7M.J...EA.I.L.4....9B8",
+				"..K.9F3.D..4PO...H.2..5..",
+				"..M.8N1.JH...E..L....K...",
+				"O..42..C.....FD9...BN1...",
+				"J1N.7PL2...6GK.5.I.AM.83D",
+				"..5AC9K.6BN..1..F3..PL2..",
+				".K9...F8.D..2...1J..5..IA"
+			},
+			{
+				"G.4L.......I...CD.....H..",
+				"JN8.5E...CH..2.B.F.I.....",
+				"....M.L....OCD.8.5..B..IK",
+				".KB.F...M7...N54P1.L..EO.",
+				"E..O6..KF....P.7.MH9.5...",
+				"..6...C.3FP..LGM.H..5JN4.",
+				"..17G.4.J5.....6..D8.....",
+				"N..4JD..E...M..FI...1GP7.",
+				".IFC..B9.M..5...L.P.6..8O",
+				".9M...7....8.OE.AJN.F3K.I",
+				".8.5D.6C....G7.HB29FJN..4",
+				".C......2HA1...G.......58",
+				"...MP.1.N.I63.......H2.FB",
+				"9BH..L.7.GO5E8..4....KI.C",
+				"A..1.O58D...HB2..KI.G.L..",
+				"BF23..H.LP.JD.ON.....ICE.",
+				"..KE...F9..GN1...L7..O...",
+				"8.D.O..6.K.....2F......G.",
+				".1...8.5O.....9.6I....7HM",
+				"7M.HL4G..N.EK..D..8J..B3.",
+				"...DCF....1.AG...7..O8...",
+				"5.O..6....M...7...FKA.1PG",
+				"....BM2H7L..O..A....IC6..",
+				"..A.45N...F.93BI.C.D..M2.",
+				"..L...P....DIE...8.N.BFK."
+			},
+			{
+				"9..N...DAB42FJ...L.6.5.HM",
+				"..K4F..83.OP...IC......N9",
+				"1.6.L.9...B.D...M.....K4J",
+				"......J.......3..G....6..",
+				"M5..8P1.6..EG...J...DI...",
+				"F.....8N...6B...D.I.....G",
+				".3M.N6.B.PE....K.O2.HA.I.",
+				"..9E.ADHC.......L.......8",
+				"D.C..KFO.2.3N..7G.E.B.1..",
+				".6.P.7G49.IA.DC...5M.K...",
+				"B1L.I94.G..C.H.M.E3.P..K.",
+				"......B..67....J.....C...",
+				"HC...JOPF..ME...427G.1L..",
+				"...72..5..KJ......6...83N",
+				".J..PM.....1.B...5...9.7.",
+				"..B....K.......8.7M..F...",
+				"P..J..E.NM1L.IB.5.....4.2",
+				"E8.M7...B....24F.6.....C5",
+				".....D..H..F.P.LIA1..8...",
+				".D..3...O.M.....2....L...",
+				".O...N79.....A.H..D..42G.",
+				".BI...KJ..........8E...F6",
+				".H..M.6.PF8.97.4.....B...",
+				".NE8..A..LG.J..O.....H5D.",
+				"K...JH.M5DFO.....CL.9..8."
+			},
+			{
+				"G..L...........C......H..",
+				"JN8.5E...CH......F.I.....",
+				"......L....OC..8.5..B..IK",
+				"..B.F...M7....54.1.L..EO.",
+				"E..O6..KF....P.7.MH9.5...",
+				"..6...C.3FP...G..H..5.N..",
+				"..17G...J5........D8.....",
+				"N..4JD......M..FI...1GP7.",
+				".IF....9.M..5...L.P....8O",
+				".9M...7....8.OE.AJN.F3K.I",
+				"...5D.......G7...29.JN..4",
+				"........2.A1...G.......58",
+				"......1.N.I63............",
+				"9BH..L.7.GO.E8..4.......C",
+				"...1.O58D...H.2..KI.G....",
+				"BF23..H.LP....O.......CE.",
+				"..KE...F9...N1...L7......",
+				"8......6.K.....2F......G.",
+				".1...8.5O.....9.6I.....HM",
+				"7M...4G..N.EK..D..8J..B..",
+				"....C.....1.A.......O8...",
+				"5.O..6....M.......FKA..PG",
+				"....BM2H7L..O..A....IC6..",
+				"..A.45N......3BI.C.D..M..",
+				"..L...P....DIE...8.N..F.."
+			}
+	};
+
+	public static void main(String[] args) {
+		SudokuSolver.VariableOrder variableOrder = args.length > 0 ? SudokuSolver.VariableOrder.valueOf(args[0]) : null;
+		SudokuSolver.ValueOrder valueOrder = args.length > 1 ? SudokuSolver.ValueOrder.valueOf(args[1]) : null;
+		SudokuSolver.Inference inference = args.length > 2 ? SudokuSolver.Inference.valueOf(args[2]) : null;
+		int maxSize = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+
+		System.out.printf("%-6s %4s %10s %12s %12s%n", "grid", "#", "ms", "nodes", "backtracks");
+		int number = 0;
+		for (String[] rows : PUZZLES) {
+			number++;
+			int[][] puzzle = parse(rows);
+			int size = (int) Math.round(Math.sqrt(puzzle.length));
+			if (size > maxSize)
+				continue;
+			SudokuSolver solver = new SudokuSolver();
+			solver.setup(size);
+			if (variableOrder != null)
+				solver.setVariableOrder(variableOrder);
+			if (valueOrder != null)
+				solver.setValueOrder(valueOrder);
+			if (inference != null)
+				solver.setInference(inference);
+			solver.readInPuzzle(parse(rows));
+
+			long start = System.nanoTime();
+			boolean solved = solver.solve();
+			long millis = (System.nanoTime() - start) / 1000000;
+			String grid = puzzle.length + "x" + puzzle.length;
+			if (!solved || !isSolution(solver.getPuzzle(), puzzle, size))
+				System.out.printf("%-6s %4d %10d %12d %12d  NOT SOLVED%n", grid, number, millis, solver.getNodeCount(), solver.getBacktrackCount());
+			else
+				System.out.printf("%-6s %4d %10d %12d %12d%n", grid, number, millis, solver.getNodeCount(), solver.getBacktrackCount());
+		}
+	}
+
+	private static int[][] parse(String[] rows) {
+		int[][] puzzle = new int[rows.length][rows.length];
+		for (int i = 0; i < rows.length; i++) {
+			for (int j = 0; j < rows.length; j++)
+				puzzle[i][j] = VALUES.indexOf(rows[i].charAt(j)) + 1; // '.' is not in VALUES, so it is 0
+		}
+		return puzzle;
+	}
+
+	/**
+	 * Returns true if every row, column and box of the solution has all values, and the solution keeps the givens.
+	 */
+	private static boolean isSolution(int[][] solution, int[][] puzzle, int size) {
+		int n = size * size;
+		for (int i = 0; i < n; i++) {
+			long row = 0;
+			long column = 0;
+			long box = 0;
+			for (int j = 0; j < n; j++) {
+				if (solution[i][j] < 1 || solution[i][j] > n || (puzzle[i][j] != 0 && puzzle[i][j] != solution[i][j]))
+					return false;
+				row |= 1L << solution[i][j];
+				column |= 1L << solution[j][i];
+				box |= 1L << solution[(i / size) * size + j / size][(i % size) * size + j % size];
+			}
+			if (Long.bitCount(row) != n || Long.bitCount(column) != n || Long.bitCount(box) != n)
+				return false;
+		}
+		return true;
+	}
+}
@@ -1,11 +1,64 @@
 import java.util.ArrayList;
-import java.util.Arrays;
 
 public class SudokuSolver implements ISudokuSolver {
 
+	public enum VariableOrder {
+		FIRST,		// the first unassigned variable
+		MRV,		// the smallest domain; ties go to the most unassigned peers (degree)
+		DOM_WDEG	// the smallest domain relative to its weight, the number of wipeouts it was involved in
+	}
+
+	public enum ValueOrder {
+		ASCENDING,	// the values of the domain from the smallest
+		LCV			// least constraining value first: the value in the fewest domains of unassigned peers
+	}
+
+	public enum Inference {
+		FORWARD_CHECKING,	// only AC_FC: the domains of the peers of each assigned variable
+		SINGLES				// after AC_FC, until nothing changes: a value that fits in only one domain of a
+							// row, column or box is the value of that variable, and a domain with a single
+							// value left removes it from the rest of the row, column and box (see Propagate)
+	}
+
 	int[][] puzzle;
 	int size;
-	ArrayList<ArrayList<Integer>> D; // = new ArrayList<ArrayList<Integer>>();
+	VariableOrder variableOrder = VariableOrder.MRV;
+	ValueOrder valueOrder = ValueOrder.LCV;
+	Inference inference = Inference.SINGLES;
+
+	// Counters of the last solve: calls of RecursiveFC, and values that were tried and failed
+	long nodes;
+	long backtracks;
+
+	// Domains: D[X] has bit v-1 set if value v is still possible for variable X. The size of a domain is its
+	// bit count, and its values are iterated from the lowest bit (see firstValue).
+	long[] D;
+
+	// Trail of the prunings of the search: each pruning pushes the variable and the values it removed, and
+	// backtracking pops back to a saved mark and puts those values back (see Prune and Undo). A search node
+	// costs only the entries of what it pruned.
+	int[] trailVariable;
+	long[] trailValues;
+	int trailSize;
+
+	// Values used by the assigned variables of each row, column and box, as bitmasks like the domains. They
+	// are updated by Assign and Unassign, so Consistent is a single bit test.
+	long[] rowUsed;
+	long[] columnUsed;
+	long[] boxUsed;
+	int[] value;		// value of each variable, 0 if unassigned
+	int unassigned;		// number of unassigned variables
+
+	// For the search: the peers of every variable (the other variables in its row, column and box), the
+	// weights for DOM_WDEG, and the ordered values of each node, indexed by the number of unassigned
+	// variables, which is different on every level
+	int[][] peers;
+	int[] weight;
+	int[][] orderedValues;
+	int[] valueScores;
+
+	// The variables of every row, column and box, for Propagate
+	int[][] units;
 
 	public int[][] getPuzzle() {
 		return puzzle;
@@ -16,23 +69,81 @@ public class SudokuSolver implements ISudokuSolver {
 	}
 
 	public void setup(int size1) {
+		if (size1 < 1 || size1 * size1 > 64)
+			throw new IllegalArgumentException("Block size must be 1-8: " + size1);
 		size = size1;
 		puzzle = new int[size * size][size * size];
-		D = new ArrayList<ArrayList<Integer>>(size * size * size * size);
-
-		// Initialize each D[X] (domain value)
-		for (int i = 0; i < size * size * size * size; i++) {
-			ArrayList<Integer> d = new ArrayList<>(Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8, 9));
-			D.add(d);
+		D = new long[size * size * size * size];
+		// every entry removes at least one value, so there are at most all values of all variables
+		trailVariable = new int[D.length * size * size];
+		trailValues = new long[D.length * size * size];
+		rowUsed = new long[size * size];
+		columnUsed = new long[size * size];
+		boxUsed = new long[size * size];
+		value = new int[D.length];
+		peers = new int[D.length][];
+		for (int X = 0; X < D.length; X++)
+			peers[X] = GetRelevantVariables(X).stream().mapToInt(Integer::intValue).toArray();
+		weight = new int[D.length];
+		orderedValues = new int[D.length + 1][size * size];
+		valueScores = new int[size * size];
+		units = new int[3 * size * size][size * size];
+		for (int i = 0; i < size * size; i++) {
+			for (int j = 0; j < size * size; j++) {
+				int X = GetVariable(i, j);
+				units[i][j] = X;
+				units[size * size + j][i] = X;
+				units[2 * size * size + GetBox(X)][(i % size) * size + j % size] = X;
+			}
 		}
+		InitDomains();
+	}
+
+	/**
+	 * Sets how the search chooses the variable to branch on.
+	 */
+	public void setVariableOrder(VariableOrder order) {
+		variableOrder = order;
+	}
+
+	/**
+	 * Sets the order in which the search tries the values of a variable.
+	 */
+	public void setValueOrder(ValueOrder order) {
+		valueOrder = order;
+	}
+
+	/**
+	 * Sets how much the search infers from each assignment.
+	 */
+	public void setInference(Inference inference) {
+		this.inference = inference;
+	}
+
+	/**
+	 * Returns the number of nodes of the search tree of the last solve.
+	 */
+	public long getNodeCount() {
+		return nodes;
+	}
+
+	/**
+	 * Returns the number of values the last solve tried that did not lead to a solution.
+	 */
+	public long getBacktrackCount() {
+		return backtracks;
 	}
 
 	public boolean solve() {
 		// update domains in order to ensure consistency with initial assignment
+		InitDomains();
 		ArrayList<Integer> asn = GetAssignment(puzzle);
+		if (!InitConstraints(asn))
+			return false; // two equal values in a row, column or box
 
 		// INITIAL_FC
-		INITIAL_FC(asn);
+		if (!INITIAL_FC(asn) || (inference == Inference.SINGLES && !Propagate()))
+			return false;
 
 		// FC
 		ArrayList<Integer> newAsn = FC(asn); // get solution
@@ -53,35 +164,38 @@ public class SudokuSolver implements ISudokuSolver {
 	// YOUR TASK: Implement FC(asn)
 	// ---------------------------------------------------------------------------------
 	public ArrayList<Integer> FC(ArrayList<Integer> asn) {
+		nodes = 0;
+		backtracks = 0;
+		for (int X = 0; X < weight.length; X++)
+			weight[X] = 1;
 		return RecursiveFC(asn);
 	}
 
 	public ArrayList<Integer> RecursiveFC(ArrayList<Integer> asn) {
-		// check whether all variables have values different from 0
-		boolean isComplete = asn.stream().allMatch(i -> i != 0);
-		System.out.println(asn.stream().filter(i -> i == 0).count());
+		nodes++;
 
-		// if all value are non-zero, we have a complete assignment
-		if (isComplete)
+		// if all variables have values different from 0, we have a complete assignment
+		if (unassigned == 0)
 			return asn;
 
-		// find first unassigned variable
-		int unassigned = -1;
-		for (int i = 0; i < asn.size(); i++) {
-			if (asn.get(i) == 0) {
-				unassigned = i;
-				break;
-			}
-		}
+		int X = SelectVariable();
+		int[] values = orderedValues[unassigned];
+		int count = OrderValues(X, values);
 
 		// save old domain
-		ArrayList<ArrayList<Integer>> oldD = deepCopy(D);
+		int mark = Mark();
 
 		// try value from domain, and rollback otherwise
-		for (Integer domainValue : D.get(unassigned)) {
-			if (AC_FC(unassigned, domainValue)) {
+		for (int k = 0; k < count; k++) {
+			int domainValue = values[k];
+			if (!Consistent(X, domainValue))
+				continue;
+			// the full scan only runs with assertions enabled, to check the incremental model
+			assert CONSISTENT(asn, X, domainValue);
+			if (AC_FC(X, domainValue) && (inference == Inference.FORWARD_CHECKING || Propagate())) {
 				// assign the unassigned variable
-				asn.set(unassigned, domainValue);
+				asn.set(X, domainValue);
+				Assign(X, domainValue);
 
 				// recursively forward-chain the new assignment
 				ArrayList<Integer> R = RecursiveFC(asn);
@@ -92,29 +206,96 @@ public class SudokuSolver implements ISudokuSolver {
 				}
 
 				// the new assignment failed, therefore we unassign the variable again
-				asn.set(unassigned, 0);
-
-				// rollback
-				D = oldD;
-			} else {
-				// rollback
-				D = oldD;
+				asn.set(X, 0);
+				Unassign(X, domainValue);
 			}
+			backtracks++;
+			// rollback
+			Undo(mark);
 		}
 		return null;// failure
 	}
 
-	// create copy of nested arrays
-	private ArrayList<ArrayList<Integer>> deepCopy(ArrayList<ArrayList<Integer>> toCopy) {
-		ArrayList<ArrayList<Integer>> copy = new ArrayList<ArrayList<Integer>>();
-		for (int i = 0; i < toCopy.size(); i++) {
-			ArrayList<Integer> entry = new ArrayList<>();
-			for (int j = 0; j < toCopy.get(i).size(); j++) {
-				entry.add(toCopy.get(i).get(j));
+	// ------------------------------------------------------------------
+	// Variable and value ordering
+	// ------------------------------------------------------------------
+	public int SelectVariable() {
+		int best = -1;
+		int bestDegree = -1;
+		for (int X = 0; X < D.length; X++) {
+			if (value[X] != 0)
+				continue;
+			if (variableOrder == VariableOrder.FIRST)
+				return X;
+			if (best < 0) {
+				best = X;
+				continue;
+			}
+			int domainSize = DomainSize(X);
+			int bestSize = DomainSize(best);
+			if (variableOrder == VariableOrder.DOM_WDEG) {
+				// domainSize / weight < bestSize / bestWeight
+				if ((long) domainSize * weight[best] < (long) bestSize * weight[X])
+					best = X;
+			}
+			else if (domainSize < bestSize) {
+				best = X;
+				bestDegree = -1;
+			}
+			else if (domainSize == bestSize) {
+				if (bestDegree < 0)
+					bestDegree = Degree(best);
+				int degree = Degree(X);
+				if (degree > bestDegree) {
+					best = X;
+					bestDegree = degree;
+				}
+			}
+		}
+		return best;
+	}
+
+	// the number of unassigned peers of X
+	public int Degree(int X) {
+		int degree = 0;
+		for (int Y : peers[X]) {
+			if (value[Y] == 0)
+				degree++;
+		}
+		return degree;
+	}
+
+	// puts the values of D[X] into values in the order they should be tried, and returns how many there are
+	public int OrderValues(int X, int[] values) {
+		int count = 0;
+		for (long d = D[X]; d != 0; d &= d - 1)
+			values[count++] = firstValue(d);
+		if (valueOrder == ValueOrder.LCV && count > 1) {
+			// a value rules out as many values of unassigned peers as there are peers that still have it
+			for (int k = 0; k < count; k++)
+				valueScores[k] = 0;
+			for (int Y : peers[X]) {
+				if (value[Y] != 0)
+					continue;
+				for (int k = 0; k < count; k++) {
+					if ((D[Y] & bit(values[k])) != 0)
+						valueScores[k]++;
+				}
+			}
+			// insertion sort by score; there are at most size*size values
+			for (int k = 1; k < count; k++) {
+				int v = values[k];
+				int score = valueScores[k];
+				int l = k - 1;
+				for (; l >= 0 && valueScores[l] > score; l--) {
+					values[l + 1] = values[l];
+					valueScores[l + 1] = valueScores[l];
+				}
+				values[l + 1] = v;
+				valueScores[l + 1] = score;
 			}
-			copy.add(entry);
 		}
-		return copy;
+		return count;
 	}
 
 	// ---------------------------------------------------------------------------------
@@ -137,91 +318,98 @@ public class SudokuSolver implements ISudokuSolver {
 	// This is a key component of FC algorithm, and the only function you need to
 	// use in your FC(asn) implementation
 	// ------------------------------------------------------------------
-	public boolean AC_FC(Integer X, Integer V) {
+	public boolean AC_FC(int X, int V) {
 		// Reduce domain Dx
-		D.get(X).clear();
-		D.get(X).add(V);
-
-		// Put in Q all relevant Y where Y>X
-		ArrayList<Integer> Q = new ArrayList<Integer>(); // list of all relevant Y
-		int col = GetColumn(X);
-		int row = GetRow(X);
-		int cell_x = row / size;
-		int cell_y = col / size;
-
-		// all variables in the same column
-		for (int i = 0; i < size * size; i++) {
-			if (GetVariable(i, col) > X) {
-				Q.add(GetVariable(i, col));
-			}
-		}
-		// all variables in the same row
-		for (int j = 0; j < size * size; j++) {
-			if (GetVariable(row, j) > X) {
-				Q.add(GetVariable(row, j));
-			}
-		}
-		// all variables in the same size*size box
-		for (int i = cell_x * size; i <= cell_x * size + 2; i++) {
-			for (int j = cell_y * size; j <= cell_y * size + 2; j++) {
-				if (GetVariable(i, j) > X) {
-					Q.add(GetVariable(i, j));
-				}
-			}
-		}
+		Prune(X, ~bit(V));
 
-		// REVISE(Y,X)
+		// Revise all peers Y: with variable ordering, peers before X may be unassigned too. Assigned peers
+		// have other values than V (see Consistent), so REVISE leaves them alone.
 		boolean consistent = true;
-		while (!Q.isEmpty() && consistent) {
-			Integer Y = (Integer) Q.remove(0);
+		for (int k = 0; k < peers[X].length && consistent; k++) {
+			int Y = peers[X][k];
 			if (REVISE(Y, X)) {
-				consistent = !D.get(Y).isEmpty();
+				consistent = D[Y] != 0;
+				if (!consistent) {
+					// for DOM_WDEG: both variables of the constraint that wiped out a domain get heavier
+					weight[X]++;
+					weight[Y]++;
+				}
 			}
 		}
 		return consistent;
 	}
+	// ------------------------------------------------------------------
+	// Propagate
+	//
+	// Inference beyond forward checking, for Inference.SINGLES. Goes over
+	// all rows, columns and boxes (units) until no domain changes:
+	// - a value in only one domain of the unit must be the value of that
+	//   variable (hidden single),
+	// - the value of a domain with a single value left is removed from the
+	//   other domains of the unit (naked single).
+	// Returns false if a domain is wiped out or a value has no place left in
+	// a unit. The prunings are on the trail like those of AC_FC.
+	// ------------------------------------------------------------------
+	public boolean Propagate() {
+		long all = size * size == 64 ? -1L : (1L << (size * size)) - 1;
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int[] unit : units) {
+				long once = 0; // values in at least one domain of the unit
+				long twice = 0; // values in at least two
+				long singles = 0; // values of the domains with one value
+				for (int X : unit) {
+					long d = D[X];
+					twice |= once & d;
+					once |= d;
+					if ((d & (d - 1)) == 0) {
+						if ((singles & d) != 0)
+							return false; // two variables of the unit can only take the same value
+						singles |= d;
+					}
+				}
+				if (once != all)
+					return false;
+				for (int X : unit) {
+					long d = D[X];
+					if ((d & (d - 1)) == 0)
+						continue;
+					long keep = d & ~singles;
+					long hidden = d & ~twice;
+					if ((hidden & (hidden - 1)) != 0)
+						return false; // two values can only go here
+					if (hidden != 0)
+						keep &= hidden;
+					if (keep != d) {
+						Prune(X, ~keep);
+						if (keep == 0)
+							return false;
+						changed = true;
+					}
+				}
+			}
+		}
+		return true;
+	}
 
 	// ------------------------------------------------------------------
 	// REVISE
+	//
+	// All constraints of Sudoku are Xi != Xj, so a value vi of Di has support
+	// in Dj unless Dj = {vi}: only a singleton Dj can remove anything, and
+	// the revision is a few bit operations.
 	// ------------------------------------------------------------------
 	public boolean REVISE(int Xi, int Xj) {
-		Integer zero = 0;
-
 		assert (Xi >= 0 && Xj >= 0);
 		assert (Xi < size * size * size * size && Xj < size * size * size * size);
 		assert (Xi != Xj);
 
-		boolean DELETED = false;
-
-		ArrayList<Integer> Di = D.get(Xi);
-		ArrayList<Integer> Dj = D.get(Xj);
-
-		for (int i = 0; i < Di.size(); i++) {
-			Integer vi = (Integer) Di.get(i);
-			ArrayList<Integer> xiEqVal = new ArrayList<Integer>(size * size * size * size);
-			for (int var = 0; var < size * size * size * size; var++) {
-				xiEqVal.add(var, zero);
-			}
-
-			xiEqVal.set(Xi, vi);
-
-			boolean hasSupport = false;
-			for (int j = 0; j < Dj.size(); j++) {
-				Integer vj = (Integer) Dj.get(j);
-				if (CONSISTENT(xiEqVal, Xj, vj)) {
-					hasSupport = true;
-					break;
-				}
-			}
-
-			if (hasSupport == false) {
-				Di.remove((Integer) vi);
-				DELETED = true;
-			}
-
-		}
-
-		return DELETED;
+		long Dj = D[Xj];
+		if (Long.bitCount(Dj) != 1 || (D[Xi] & Dj) == 0)
+			return false;
+		Prune(Xi, Dj);
+		return true;
 	}
 
 	// ------------------------------------------------------------------
@@ -233,10 +421,10 @@ public class SudokuSolver implements ISudokuSolver {
 	// This implicitly encodes all constraints describing Sudoku.
 	//
 	// Before it returns, it undoes the temporary assignment variable=val
-	// It can be used as a building block for REVISE and AC-FC
 	//
-	// NOTE: the procedure assumes that all assigned values are in the range
-	// {0,..,9}.
+	// This scans every row, column and box, so the solver itself uses the
+	// row/column/box masks (see Consistent); this full check is only used in
+	// assertions, to verify them when run with -ea.
 	// -------------------------------------------------------------------
 	public boolean CONSISTENT(ArrayList<Integer> asn, Integer variable, Integer val) {
 		Integer v1, v2;
@@ -306,6 +494,51 @@ public class SudokuSolver implements ISudokuSolver {
 		return true;
 	}
 
+	// ------------------------------------------------------------------
+	// Incremental constraint model: the values used in each row, column
+	// and box by the current assignment
+	// -------------------------------------------------------------------
+	public boolean InitConstraints(ArrayList<Integer> asn) {
+		for (int i = 0; i < rowUsed.length; i++) {
+			rowUsed[i] = 0;
+			columnUsed[i] = 0;
+			boxUsed[i] = 0;
+		}
+		for (int X = 0; X < value.length; X++)
+			value[X] = 0;
+		unassigned = value.length;
+		for (int X = 0; X < asn.size(); X++) {
+			int V = asn.get(X);
+			if (V != 0) {
+				if (!Consistent(X, V))
+					return false;
+				Assign(X, V);
+			}
+		}
+		return true;
+	}
+
+	// whether X = V agrees with the assigned variables in the row, column and box of X
+	public boolean Consistent(int X, int V) {
+		return ((rowUsed[GetRow(X)] | columnUsed[GetColumn(X)] | boxUsed[GetBox(X)]) & bit(V)) == 0;
+	}
+
+	public void Assign(int X, int V) {
+		value[X] = V;
+		unassigned--;
+		rowUsed[GetRow(X)] |= bit(V);
+		columnUsed[GetColumn(X)] |= bit(V);
+		boxUsed[GetBox(X)] |= bit(V);
+	}
+
+	public void Unassign(int X, int V) {
+		value[X] = 0;
+		unassigned++;
+		rowUsed[GetRow(X)] &= ~bit(V);
+		columnUsed[GetColumn(X)] &= ~bit(V);
+		boxUsed[GetBox(X)] &= ~bit(V);
+	}
+
 	// ------------------------------------------------------------------
 	// INITIAL_FC
 	// ------------------------------------------------------------------
@@ -320,7 +553,7 @@ public class SudokuSolver implements ISudokuSolver {
 				while (!Q.isEmpty() && consistent) {
 					Integer Y = (Integer) Q.remove(0);
 					if (REVISE(Y, i)) {
-						consistent = !D.get(Y).isEmpty();
+						consistent = D[Y] != 0;
 					}
 				}
 				if (!consistent)
@@ -355,10 +588,11 @@ public class SudokuSolver implements ISudokuSolver {
 				Q.add(GetVariable(row, j));
 			}
 		}
-		// all variables in the same size*size cell
-		for (int i = cell_x * size; i <= cell_x * size + 2; i++) {
-			for (int j = cell_y * size; j <= cell_y * size + 2; j++) {
-				if (GetVariable(i, j) != X) {
+		// all other variables in the same size*size cell (the ones in the same
+		// row or column are already in Q)
+		for (int i = cell_x * size; i < cell_x * size + size; i++) {
+			for (int j = cell_y * size; j < cell_y * size + size; j++) {
+				if (i != row && j != col) {
 					Q.add(GetVariable(i, j));
 				}
 			}
@@ -377,8 +611,7 @@ public class SudokuSolver implements ISudokuSolver {
 				asn.add(GetVariable(i, j), p[i][j]);
 				if (p[i][j] != 0) {
 					// restrict domain
-					D.get(GetVariable(i, j)).clear();
-					D.get(GetVariable(i, j)).add(p[i][j]);
+					D[GetVariable(i, j)] = bit(p[i][j]);
 				}
 			}
 		}
@@ -396,6 +629,55 @@ public class SudokuSolver implements ISudokuSolver {
 		return p;
 	}
 
+	// ------------------------------------------------------------------
+	// Domains
+	// -------------------------------------------------------------------
+	public void InitDomains() {
+		// every variable can take all values 1..size*size
+		long all = size * size == 64 ? -1L : (1L << (size * size)) - 1;
+		for (int X = 0; X < D.length; X++)
+			D[X] = all;
+		trailSize = 0;
+	}
+
+	// removes the given values from D[X], recording the ones that were there on the trail
+	public void Prune(int X, long values) {
+		long removed = D[X] & values;
+		if (removed != 0) {
+			trailVariable[trailSize] = X;
+			trailValues[trailSize] = removed;
+			trailSize++;
+			D[X] &= ~removed;
+		}
+	}
+
+	// the current position of the trail, to undo back to
+	public int Mark() {
+		return trailSize;
+	}
+
+	// puts back all values pruned since the mark
+	public void Undo(int mark) {
+		while (trailSize > mark) {
+			trailSize--;
+			D[trailVariable[trailSize]] |= trailValues[trailSize];
+		}
+	}
+
+	// the bit of value v in a domain
+	public static long bit(int v) {
+		return 1L << (v - 1);
+	}
+
+	// the smallest value in a non-empty domain
+	public static int firstValue(long domain) {
+		return Long.numberOfTrailingZeros(domain) + 1;
+	}
+
+	public int DomainSize(int X) {
+		return Long.bitCount(D[X]);
+	}
+
 	// ------------------------------------------------------------------
 	// Utility functions
 	// -------------------------------------------------------------------
@@ -413,4 +695,8 @@ public class SudokuSolver implements ISudokuSolver {
 		return X - ((X / (size * size)) * size * size);
 	}
 
+	public int GetBox(int X) {
+		return (GetRow(X) / size) * size + GetColumn(X) / size;
+	}
+
 }